@@ -0,0 +1,236 @@
+package com.wenziyue.uid.codec;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * 把非负 long ID 编码为短字符串，支持任意 ASCII 字母表，可选先经过 IdPermutation 混淆。
+ * <p>
+ * encode(long, char[], int) 与 encode(long, ByteBuffer) 直接写入调用方复用的缓冲区，不产生任何对象；
+ * 缓冲区至少需要 getMaxLength() 个位置。默认输出最短形式，fixedLength 时左侧用字母表第一个字符补齐到 getMaxLength()，
+ * 未混淆时定长字符串的字典序与数值顺序一致（字母表需按 ASCII 升序排列，内置字母表均满足）
+ *
+ * @author wenziyue
+ */
+public final class IdEncoder {
+
+    /**
+     * 0-9、A-Z、a-z，按 ASCII 升序，long 最长 11 位
+     */
+    public static final String BASE62 = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz";
+
+    /**
+     * Crockford Base32：去掉了易混淆的 I、L、O、U，解码时不区分大小写，I / L 视为 1，O 视为 0，long 最长 13 位
+     */
+    public static final String CROCKFORD_BASE32 = "0123456789ABCDEFGHJKMNPQRSTVWXYZ";
+
+    private final char[] digits;
+
+    private final int radix;
+
+    /**
+     * ASCII 字符 -> 数值，-1 表示非法字符
+     */
+    private final int[] values = new int[128];
+
+    private final int maxLength;
+
+    private final boolean fixedLength;
+
+    /**
+     * 为 null 时不混淆
+     */
+    private final IdPermutation permutation;
+
+    public IdEncoder(String alphabet) {
+        this(alphabet, false, null);
+    }
+
+    /**
+     * @param alphabet    字母表，至少 2 个互不相同的可见 ASCII 字符
+     * @param fixedLength 是否补齐到 getMaxLength()
+     * @param permutation 混淆用的置换，null 表示不混淆
+     */
+    public IdEncoder(String alphabet, boolean fixedLength, IdPermutation permutation) {
+        if (alphabet == null || alphabet.length() < 2) {
+            throw new IllegalArgumentException("字母表至少需要 2 个字符");
+        }
+        this.digits = alphabet.toCharArray();
+        this.radix = digits.length;
+        this.fixedLength = fixedLength;
+        this.permutation = permutation;
+        Arrays.fill(values, -1);
+        for (int i = 0; i < digits.length; i++) {
+            char c = digits[i];
+            if (c <= ' ' || c >= 127) {
+                throw new IllegalArgumentException("字母表只能包含可见 ASCII 字符：" + alphabet);
+            }
+            if (values[c] >= 0) {
+                throw new IllegalArgumentException("字母表包含重复字符 '" + c + "'：" + alphabet);
+            }
+            values[c] = i;
+        }
+        if (CROCKFORD_BASE32.equals(alphabet)) {
+            for (int i = 0; i < digits.length; i++) {
+                values[Character.toLowerCase(digits[i])] = i;
+            }
+            values['I'] = values['i'] = values['L'] = values['l'] = 1;
+            values['O'] = values['o'] = 0;
+        }
+        this.maxLength = length(Long.MAX_VALUE);
+    }
+
+    /**
+     * 按名称取字母表：base62、crockford（不区分大小写），其他值按字面字符作为字母表
+     *
+     * @param nameOrChars 名称或字母表本身
+     * @return 字母表
+     */
+    public static String alphabet(String nameOrChars) {
+        switch (nameOrChars.toLowerCase(Locale.ROOT)) {
+            case "base62":
+                return BASE62;
+            case "crockford":
+            case "crockford32":
+                return CROCKFORD_BASE32;
+            default:
+                return nameOrChars;
+        }
+    }
+
+    /**
+     * @param id 非负 ID
+     * @return 编码后的字符串
+     */
+    public String encode(long id) {
+        char[] buffer = new char[maxLength];
+        int length = encode(id, buffer, 0);
+        return new String(buffer, 0, length);
+    }
+
+    /**
+     * 把 id 编码后写入 dst[offset, offset + 返回值)
+     *
+     * @param id     非负 ID
+     * @param dst    目标数组
+     * @param offset 起始位置
+     * @return 写入的字符数
+     * @throws IndexOutOfBoundsException dst 从 offset 开始放不下编码结果
+     */
+    public int encode(long id, char[] dst, int offset) {
+        long value = permute(id);
+        int length = fixedLength ? maxLength : length(value);
+        if (offset < 0 || dst.length - offset < length) {
+            throw new IndexOutOfBoundsException("dst 从 " + offset + " 开始放不下 " + length + " 个字符");
+        }
+        for (int i = offset + length - 1; i >= offset; i--) {
+            dst[i] = digits[(int) (value % radix)];
+            value /= radix;
+        }
+        return length;
+    }
+
+    /**
+     * 把 id 编码为 ASCII 字节写入 dst 的当前位置，写完后 position 前移
+     *
+     * @param id  非负 ID
+     * @param dst 目标缓冲区，堆内外均可
+     * @return 写入的字节数
+     * @throws BufferOverflowException 剩余空间放不下编码结果
+     */
+    public int encode(long id, ByteBuffer dst) {
+        long value = permute(id);
+        int length = fixedLength ? maxLength : length(value);
+        if (dst.remaining() < length) {
+            throw new BufferOverflowException();
+        }
+        int position = dst.position();
+        for (int i = position + length - 1; i >= position; i--) {
+            dst.put(i, (byte) digits[(int) (value % radix)]);
+            value /= radix;
+        }
+        dst.position(position + length);
+        return length;
+    }
+
+    /**
+     * encode 的逆运算
+     *
+     * @param encoded 编码后的字符串
+     * @return 原始 ID
+     * @throws IllegalArgumentException 包含字母表以外的字符、为空或超出 long 范围
+     */
+    public long decode(CharSequence encoded) {
+        int length = encoded.length();
+        if (length == 0) {
+            throw new IllegalArgumentException("编码后的 ID 不能为空");
+        }
+        long value = 0;
+        for (int i = 0; i < length; i++) {
+            value = accumulate(value, encoded.charAt(i), encoded);
+        }
+        return reverse(value);
+    }
+
+    /**
+     * 从 src[offset, offset + length) 解码，不产生任何对象
+     */
+    public long decode(char[] src, int offset, int length) {
+        if (length <= 0) {
+            throw new IllegalArgumentException("编码后的 ID 不能为空");
+        }
+        long value = 0;
+        for (int i = offset; i < offset + length; i++) {
+            value = accumulate(value, src[i], null);
+        }
+        return reverse(value);
+    }
+
+    /**
+     * 编码结果的最大长度，用于分配可复用的缓冲区
+     */
+    public int getMaxLength() {
+        return maxLength;
+    }
+
+    public String getAlphabet() {
+        return new String(digits);
+    }
+
+    public boolean isObfuscated() {
+        return permutation != null;
+    }
+
+    private long accumulate(long value, char c, CharSequence encoded) {
+        int digit = c < values.length ? values[c] : -1;
+        if (digit < 0) {
+            throw new IllegalArgumentException("非法字符 '" + c + "'" + (encoded == null ? "" : "：" + encoded));
+        }
+        if (value > (Long.MAX_VALUE - digit) / radix) {
+            throw new IllegalArgumentException("编码后的 ID 超出 long 范围" + (encoded == null ? "" : "：" + encoded));
+        }
+        return value * radix + digit;
+    }
+
+    private long permute(long id) {
+        if (id < 0) {
+            throw new IllegalArgumentException("id 不能为负数：" + id);
+        }
+        return permutation == null ? id : permutation.permute(id);
+    }
+
+    private long reverse(long value) {
+        return permutation == null ? value : permutation.reverse(value);
+    }
+
+    private int length(long value) {
+        int length = 1;
+        while (value >= radix) {
+            value /= radix;
+            length++;
+        }
+        return length;
+    }
+}
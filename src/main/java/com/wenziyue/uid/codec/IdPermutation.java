@@ -0,0 +1,101 @@
+package com.wenziyue.uid.codec;
+
+/**
+ * [0, 2^63) 上由密钥决定的可逆置换，用于打乱连续的号段 ID，使对外暴露的 ID 无法通过加减猜出相邻 ID。
+ * <p>
+ * 由若干步可逆运算组成（均在 mod 2^63 下进行）：与密钥异或、加密钥、乘奇数、右移异或。
+ * 相邻 ID 经过置换后在整个 63 位空间内分散，同一密钥下一一对应，可以用 reverse 还原。
+ * 这只是混淆而不是加密：拿到足够多的明文 / 密文对仍可能推出密钥，不要用它保护敏感信息
+ *
+ * @author wenziyue
+ */
+public final class IdPermutation {
+
+    private static final long MASK = Long.MAX_VALUE;
+
+    private static final long MULTIPLIER1 = 0x9E3779B97F4A7C15L;
+    private static final long MULTIPLIER2 = 0xBF58476D1CE4E5B9L;
+    private static final long INVERSE1 = inverse(MULTIPLIER1);
+    private static final long INVERSE2 = inverse(MULTIPLIER2);
+
+    private final long key1;
+    private final long key2;
+    private final long key3;
+
+    /**
+     * @param key 密钥，不同密钥得到不同的置换；上线后修改会导致已发出的字符串 ID 无法还原
+     */
+    public IdPermutation(long key) {
+        this.key1 = mix(key) & MASK;
+        this.key2 = mix(key + 1) & MASK;
+        this.key3 = mix(key + 2) & MASK;
+    }
+
+    /**
+     * @param id 非负 ID
+     * @return 置换后的非负数
+     */
+    public long permute(long id) {
+        if (id < 0) {
+            throw new IllegalArgumentException("id 不能为负数：" + id);
+        }
+        long x = id ^ key1;
+        x = (x * MULTIPLIER1) & MASK;
+        x ^= x >>> 31;
+        x = (x + key2) & MASK;
+        x = (x * MULTIPLIER2) & MASK;
+        x ^= x >>> 29;
+        return x ^ key3;
+    }
+
+    /**
+     * permute 的逆运算
+     *
+     * @param value permute 的结果
+     * @return 原始 ID
+     */
+    public long reverse(long value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("value 不能为负数：" + value);
+        }
+        long x = value ^ key3;
+        x = unshift(x, 29);
+        x = (x * INVERSE2) & MASK;
+        x = (x - key2) & MASK;
+        x = unshift(x, 31);
+        x = (x * INVERSE1) & MASK;
+        return x ^ key1;
+    }
+
+    /**
+     * x ^= x >>> shift 的逆运算
+     */
+    private static long unshift(long value, int shift) {
+        long x = value;
+        for (int bits = shift; bits < 63; bits += shift) {
+            x = value ^ (x >>> shift);
+        }
+        return x;
+    }
+
+    /**
+     * 奇数 mod 2^64 的乘法逆元（牛顿迭代，每轮有效位数翻倍），对 mod 2^63 同样成立
+     */
+    private static long inverse(long odd) {
+        long inverse = odd;
+        for (int i = 0; i < 5; i++) {
+            inverse *= 2 - odd * inverse;
+        }
+        return inverse;
+    }
+
+    /**
+     * SplitMix64 的输出函数，把用户配置的密钥扩散成互不相关的子密钥
+     */
+    private static long mix(long key) {
+        long z = key + 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
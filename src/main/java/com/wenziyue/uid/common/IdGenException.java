@@ -0,0 +1,27 @@
+package com.wenziyue.uid.common;
+
+/**
+ * ID 生成失败时抛出的异常，code 与 Result 中的异常码保持一致（-1 ~ -5）
+ *
+ * @author wenziyue
+ */
+public class IdGenException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long code;
+
+    public IdGenException(long code, String message) {
+        super(message);
+        this.code = code;
+    }
+
+    public IdGenException(long code, String message, Throwable cause) {
+        super(message, cause);
+        this.code = code;
+    }
+
+    public long getCode() {
+        return code;
+    }
+}
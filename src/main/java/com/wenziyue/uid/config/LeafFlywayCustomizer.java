@@ -1,5 +1,7 @@
 package com.wenziyue.uid.config;
 
+import com.wenziyue.uid.segment.SegmentSqlDialect;
+import lombok.extern.slf4j.Slf4j;
 import org.flywaydb.core.Flyway;
 import org.flywaydb.core.api.Location;
 import org.flywaydb.core.api.configuration.FluentConfiguration;
@@ -8,16 +10,22 @@ import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.boot.autoconfigure.flyway.FlywayConfigurationCustomizer;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.jdbc.support.MetaDataAccessException;
 
+import javax.sql.DataSource;
+import java.sql.DatabaseMetaData;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
 /**
- * 负责把 starter 自己的脚本目录追加到 Flyway 的扫描路径
+ * 负责把 starter 自己的脚本目录追加到 Flyway 的扫描路径：
+ * MySQL / MariaDB 使用 wzyuid/db/mysql，其他数据库（H2、PostgreSQL 等）使用标准 SQL 的 wzyuid/db/standard
  *
  * @author wenziyue
  */
+@Slf4j
 @Configuration
 @ConditionalOnClass(Flyway.class)
 @ConditionalOnProperty(prefix = "wenziyue.uid", name = "auto-create-table", havingValue = "true", matchIfMissing = true)
@@ -29,9 +37,28 @@ public class LeafFlywayCustomizer {
             // 1. 取出原有的 locations
             List<Location> list = new ArrayList<>(Arrays.asList(cfg.getLocations()));
             // 2. 追加我们自己的脚本目录
-            list.add(new Location("classpath:wzyuid/db"));
+            list.add(new Location("classpath:wzyuid/db/" + scriptFolder(cfg.getDataSource())));
             // 3. 覆盖回去
             cfg.locations(list.toArray(new Location[0]));
         };
     }
+
+    /**
+     * 按数据库产品名选择脚本目录，无法识别时沿用 MySQL 脚本
+     *
+     * @param dataSource Flyway 使用的数据源
+     * @return 脚本目录名
+     */
+    private static String scriptFolder(DataSource dataSource) {
+        if (dataSource == null) {
+            return "mysql";
+        }
+        try {
+            String productName = JdbcUtils.extractDatabaseMetaData(dataSource, DatabaseMetaData::getDatabaseProductName);
+            return SegmentSqlDialect.fromProductName(productName) == SegmentSqlDialect.MYSQL ? "mysql" : "standard";
+        } catch (MetaDataAccessException e) {
+            log.warn("[Segment UID] 无法识别数据库类型，使用 MySQL 建表脚本", e);
+            return "mysql";
+        }
+    }
 }
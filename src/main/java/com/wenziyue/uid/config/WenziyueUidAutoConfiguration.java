@@ -1,53 +1,66 @@
 package com.wenziyue.uid.config;
 
+import com.wenziyue.uid.codec.IdEncoder;
+import com.wenziyue.uid.codec.IdPermutation;
 import com.wenziyue.uid.core.IdGen;
+import com.wenziyue.uid.core.ReactiveIdGen;
+import com.wenziyue.uid.core.StringIdGen;
+import com.wenziyue.uid.metrics.SegmentUidMetrics;
 import com.wenziyue.uid.properties.UidGeneratorProperties;
+import com.wenziyue.uid.segment.FileSegmentIdDao;
+import com.wenziyue.uid.segment.R2dbcSegmentIdDao;
+import com.wenziyue.uid.segment.ReactiveSegmentIdGenerator;
 import com.wenziyue.uid.segment.SegmentIdDao;
 import com.wenziyue.uid.segment.SegmentIdDaoImpl;
 import com.wenziyue.uid.segment.SegmentIdGeneratorImpl;
+import com.wenziyue.uid.segment.ShardedSegmentIdDao;
+import com.wenziyue.uid.snowflake.LeafWorkerIdAssigner;
+import com.wenziyue.uid.snowflake.SnowflakeIdGenerator;
+import io.r2dbc.spi.ConnectionFactory;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.AutoConfigureAfter;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.file.Paths;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * @author wenziyue
  */
+@Slf4j
 @Configuration
 @RequiredArgsConstructor
+@AutoConfigureAfter(name = {
+        "org.springframework.boot.autoconfigure.jdbc.JdbcTemplateAutoConfiguration",
+        "org.springframework.boot.autoconfigure.r2dbc.R2dbcAutoConfiguration"
+})
 @EnableConfigurationProperties(UidGeneratorProperties.class)
 public class WenziyueUidAutoConfiguration {
 
-    @Bean
-    @ConditionalOnMissingBean
-    public SegmentIdDaoImpl segmentIdDao(JdbcTemplate jdbc) {
-        return new SegmentIdDaoImpl(jdbc);
-    }
-
-    @Bean(name = "segmentUidTaskExecutor")
-    @ConditionalOnMissingBean(name = "segmentUidTaskExecutor")
-    public ThreadPoolTaskExecutor segmentUidTaskExecutor() {
-        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
-        executor.setCorePoolSize(5);
-        executor.setMaxPoolSize(10);
-        executor.setQueueCapacity(100);
-        executor.setThreadNamePrefix("segment-pool-");
-        executor.initialize(); // ✅ 记得初始化
-        return executor;
-    }
-
     @Bean
     @ConditionalOnMissingBean(name = "segmentUidScheduler")
-    public ScheduledExecutorService segmentUidScheduler() {
-        return Executors.newSingleThreadScheduledExecutor(r -> {
+    public ScheduledExecutorService segmentUidScheduler(UidGeneratorProperties properties) {
+        AtomicInteger index = new AtomicInteger();
+        return Executors.newScheduledThreadPool(properties.getSchedulerPoolSize(), r -> {
             Thread t = new Thread(r);
-            t.setName("segment-uid-cache-refresh");
+            t.setName("segment-uid-scheduler-" + index.incrementAndGet());
             t.setDaemon(true);
             return t;
         });
@@ -55,24 +68,212 @@ public class WenziyueUidAutoConfiguration {
 
     @Bean
     @ConditionalOnMissingBean
-    public SegmentIdGeneratorImpl segmentIdGenerator(
-            UidGeneratorProperties properties,
-            SegmentIdDao dao,
-            ThreadPoolTaskExecutor taskExecutor,
-            ScheduledExecutorService segmentUidScheduler
-    ) {
-        return new SegmentIdGeneratorImpl(
-                properties,
-                dao,
-                taskExecutor,
-                segmentUidScheduler
-        );
+    public IdEncoder idEncoder(UidGeneratorProperties properties) {
+        UidGeneratorProperties.Encoding encoding = properties.getEncoding();
+        return new IdEncoder(IdEncoder.alphabet(encoding.getAlphabet()), encoding.isFixedLength(),
+                encoding.isObfuscate() ? new IdPermutation(encoding.getKey()) : null);
     }
 
+    /**
+     * 字符串 ID，segment 与 snowflake 模式均可用
+     */
     @Bean
     @ConditionalOnMissingBean
-    public IdGen idGen(SegmentIdGeneratorImpl segmentIdGenerator) {
-        return segmentIdGenerator;
+    public StringIdGen stringIdGen(IdGen idGen, IdEncoder idEncoder) {
+        return new StringIdGen(idGen, idEncoder);
+    }
+
+    /**
+     * Segment 模式（默认）
+     */
+    @Configuration
+    @ConditionalOnProperty(prefix = "wenziyue.uid", name = "mode", havingValue = "segment", matchIfMissing = true)
+    static class SegmentConfiguration {
+
+        /**
+         * 有 JdbcTemplate 时通过 JDBC 申请号段（优先）。spring-jdbc 是可选依赖，只用 R2DBC 的服务不会加载这里
+         */
+        @Configuration
+        @ConditionalOnProperty(prefix = "wenziyue.uid", name = "store", havingValue = "db", matchIfMissing = true)
+        @ConditionalOnClass(name = "org.springframework.jdbc.core.JdbcTemplate")
+        @ConditionalOnBean(JdbcTemplate.class)
+        static class JdbcSegmentIdDaoConfiguration {
+
+            @Bean
+            @ConditionalOnMissingBean(SegmentIdDao.class)
+            public SegmentIdDaoImpl segmentIdDao(JdbcTemplate jdbc, UidGeneratorProperties properties) {
+                return new SegmentIdDaoImpl(jdbc, properties.getDialect());
+            }
+        }
+
+        /**
+         * 只有 R2DBC ConnectionFactory（例如 WebFlux + R2DBC 服务，此时 Spring Boot 不会创建 DataSource）时通过 R2DBC 申请号段。
+         * 同时存在 JdbcTemplate 时让给 JDBC，不依赖两个嵌套配置类的解析顺序
+         */
+        @Configuration
+        @ConditionalOnProperty(prefix = "wenziyue.uid", name = "store", havingValue = "db", matchIfMissing = true)
+        @ConditionalOnClass(name = "org.springframework.r2dbc.core.DatabaseClient")
+        @ConditionalOnBean(type = "io.r2dbc.spi.ConnectionFactory")
+        @ConditionalOnMissingBean(type = "org.springframework.jdbc.core.JdbcTemplate")
+        static class R2dbcSegmentIdDaoConfiguration {
+
+            @Bean
+            @ConditionalOnMissingBean(SegmentIdDao.class)
+            public R2dbcSegmentIdDao r2dbcSegmentIdDao(ConnectionFactory connectionFactory) {
+                return new R2dbcSegmentIdDao(connectionFactory);
+            }
+        }
+
+        /**
+         * wenziyue.uid.store=file 时使用本地文件申请号段，不需要任何数据库
+         */
+        @Configuration
+        @ConditionalOnProperty(prefix = "wenziyue.uid", name = "store", havingValue = "file")
+        static class FileSegmentIdDaoConfiguration {
+
+            @Bean(destroyMethod = "close")
+            @ConditionalOnMissingBean(SegmentIdDao.class)
+            public FileSegmentIdDao fileSegmentIdDao(UidGeneratorProperties properties) {
+                UidGeneratorProperties.FileStore fileStore = properties.getFileStore();
+                FileSegmentIdDao dao = new FileSegmentIdDao(Paths.get(fileStore.getPath()), fileStore.getCompactThreshold());
+                // 与 leaf_alloc 的初始化一致：默认 tag 从 initId 开始发号
+                if (dao.createTag(properties.getBizTag(), properties.getInitId(), properties.getStep())) {
+                    log.info("[Segment UID] 已在号段文件中初始化 bizTag={}, startId={}", properties.getBizTag(), properties.getInitId());
+                }
+                return dao;
+            }
+        }
+
+        @Bean(name = "segmentUidTaskExecutor")
+        @ConditionalOnMissingBean(name = "segmentUidTaskExecutor")
+        @ConditionalOnProperty(prefix = "wenziyue.uid.prefetch-executor", name = "virtual-threads", havingValue = "false", matchIfMissing = true)
+        public ThreadPoolTaskExecutor segmentUidTaskExecutor(UidGeneratorProperties properties) {
+            return newThreadPoolTaskExecutor(properties.getPrefetchExecutor());
+        }
+
+        /**
+         * prefetch-executor.virtual-threads=true 时单独注册的预加载执行器，bean 名同样是 segmentUidTaskExecutor，
+         * 类型为 ExecutorService（每个任务一个虚拟线程）；JDK 不支持虚拟线程时退回线程池
+         */
+        @Bean(name = "segmentUidTaskExecutor")
+        @ConditionalOnMissingBean(name = "segmentUidTaskExecutor")
+        @ConditionalOnProperty(prefix = "wenziyue.uid.prefetch-executor", name = "virtual-threads", havingValue = "true")
+        public Executor segmentUidVirtualThreadTaskExecutor(UidGeneratorProperties properties) {
+            Executor executor = newVirtualThreadPerTaskExecutor("segment-pool-");
+            return executor != null ? executor : newThreadPoolTaskExecutor(properties.getPrefetchExecutor());
+        }
+
+        private static ThreadPoolTaskExecutor newThreadPoolTaskExecutor(UidGeneratorProperties.PrefetchExecutor config) {
+            ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+            executor.setCorePoolSize(config.getCorePoolSize());
+            executor.setMaxPoolSize(config.getMaxPoolSize());
+            executor.setQueueCapacity(config.getQueueCapacity());
+            executor.setKeepAliveSeconds((int) config.getKeepAlive().getSeconds());
+            executor.setThreadNamePrefix("segment-pool-");
+            executor.initialize(); // ✅ 记得初始化
+            return executor;
+        }
+
+        /**
+         * 通过反射创建 Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(prefix, 0).factory())，
+         * 保持 Java 8 编译目标不变
+         *
+         * @param prefix 线程名前缀
+         * @return ExecutorService，JDK 不支持虚拟线程时返回 null
+         */
+        private static Executor newVirtualThreadPerTaskExecutor(String prefix) {
+            try {
+                Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+                Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+                builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, prefix, 0L);
+                ThreadFactory factory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+                return (Executor) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class).invoke(null, factory);
+            } catch (ReflectiveOperationException e) {
+                log.warn("[Segment UID] 当前 JDK 不支持虚拟线程，预加载改用线程池", e);
+                return null;
+            }
+        }
+
+        @Bean
+        @ConditionalOnMissingBean
+        public SegmentIdGeneratorImpl segmentIdGenerator(
+                UidGeneratorProperties properties,
+                SegmentIdDao dao,
+                @Qualifier("segmentUidTaskExecutor") Executor taskExecutor,
+                ScheduledExecutorService segmentUidScheduler
+        ) {
+            // 配置了分片的 tag 拆到多行申请号段
+            SegmentIdDao segmentIdDao = properties.getSharding().getTags().isEmpty()
+                    ? dao
+                    : new ShardedSegmentIdDao(dao, properties);
+            return new SegmentIdGeneratorImpl(properties, segmentIdDao, taskExecutor, segmentUidScheduler);
+        }
+
+        @Bean
+        @ConditionalOnMissingBean
+        public IdGen idGen(SegmentIdGeneratorImpl segmentIdGenerator) {
+            return segmentIdGenerator;
+        }
+
+        /**
+         * classpath 中有 Reactor 时提供响应式发号接口
+         */
+        @Configuration
+        @ConditionalOnClass(name = "reactor.core.publisher.Mono")
+        static class ReactiveSegmentConfiguration {
+
+            @Bean
+            @ConditionalOnMissingBean
+            public ReactiveIdGen reactiveIdGen(SegmentIdGeneratorImpl segmentIdGenerator) {
+                return new ReactiveSegmentIdGenerator(segmentIdGenerator);
+            }
+        }
+
+        /**
+         * classpath 中有 Micrometer 时注册发号指标，Spring Boot Actuator 会把 MeterBinder 绑定到所有 MeterRegistry
+         */
+        @Configuration
+        @ConditionalOnClass(name = "io.micrometer.core.instrument.MeterRegistry")
+        static class SegmentUidMetricsConfiguration {
+
+            @Bean
+            @ConditionalOnMissingBean
+            public SegmentUidMetrics segmentUidMetrics(SegmentIdGeneratorImpl segmentIdGenerator) {
+                return new SegmentUidMetrics(segmentIdGenerator);
+            }
+        }
+    }
+
+    /**
+     * Snowflake 模式：wenziyue.uid.mode=snowflake，节点号通过 JDBC 分配，需要 spring-boot-starter-jdbc
+     */
+    @Configuration
+    @ConditionalOnProperty(prefix = "wenziyue.uid", name = "mode", havingValue = "snowflake")
+    static class SnowflakeConfiguration {
+
+        @Bean
+        @ConditionalOnMissingBean
+        public LeafWorkerIdAssigner leafWorkerIdAssigner(JdbcTemplate jdbc, Environment environment) throws UnknownHostException {
+            return new LeafWorkerIdAssigner(jdbc,
+                    InetAddress.getLocalHost().getHostAddress(),
+                    environment.getProperty("server.port", "8080"));
+        }
+
+        @Bean
+        @ConditionalOnMissingBean
+        public SnowflakeIdGenerator snowflakeIdGenerator(
+                UidGeneratorProperties properties,
+                LeafWorkerIdAssigner leafWorkerIdAssigner,
+                ScheduledExecutorService segmentUidScheduler
+        ) {
+            return new SnowflakeIdGenerator(properties, leafWorkerIdAssigner, segmentUidScheduler);
+        }
+
+        @Bean
+        @ConditionalOnMissingBean
+        public IdGen idGen(SnowflakeIdGenerator snowflakeIdGenerator) {
+            return snowflakeIdGenerator;
+        }
     }
 
 }
@@ -1,6 +1,8 @@
 package com.wenziyue.uid.core;
 
+import com.wenziyue.uid.common.IdGenException;
 import com.wenziyue.uid.common.Result;
+import com.wenziyue.uid.common.Status;
 
 /**
  * 通用的 ID 生成器接口，支持多种实现策略。
@@ -10,10 +12,74 @@ import com.wenziyue.uid.common.Result;
 public interface IdGen {
 
     /**
-     * 获取下一个唯一 ID
+     * 获取默认业务标签（wenziyue.uid.biz-tag）的下一个唯一 ID
      */
     Result nextId();
 
+    /**
+     * 获取指定业务标签的下一个唯一 ID，每个 tag 拥有独立的号段缓存。
+     * 默认忽略 bizTag、调用 nextId()，所有 tag 共用同一 ID 空间（与 snowflake 模式一致），
+     * 只实现了 nextId() 的已有实现类无需修改；按 tag 区分 ID 空间的实现类需要覆盖
+     *
+     * @param bizTag 业务标签，对应 leaf_alloc.biz_tag
+     */
+    default Result nextId(String bizTag) {
+        return nextId();
+    }
+
+    /**
+     * 获取默认业务标签的下一个 ID，返回原始 long，失败时抛出异常而不是返回负数异常码。
+     * 默认基于 nextId() 实现，内置实现类会覆盖为成功路径不创建任何对象的版本
+     *
+     * @return ID
+     * @throws IdGenException 获取失败，code 与 Result 中的异常码一致
+     */
+    default long nextLongId() {
+        Result result = nextId();
+        if (result.getStatus() != Status.SUCCESS) {
+            throw new IdGenException(result.getId(), "获取 ID 失败");
+        }
+        return result.getId();
+    }
+
+    /**
+     * 获取指定业务标签的下一个 ID，返回原始 long，失败时抛出异常而不是返回负数异常码
+     *
+     * @param bizTag 业务标签
+     * @return ID
+     * @throws IdGenException 获取失败，code 与 Result 中的异常码一致
+     */
+    default long nextLongId(String bizTag) {
+        Result result = nextId(bizTag);
+        if (result.getStatus() != Status.SUCCESS) {
+            throw new IdGenException(result.getId(), "获取 ID 失败, bizTag=" + bizTag);
+        }
+        return result.getId();
+    }
+
+    /**
+     * 批量获取指定业务标签的 n 个唯一 ID，默认逐个调用 nextId，实现类可覆盖为一次性预留
+     *
+     * @param bizTag 业务标签
+     * @param n      需要的 ID 个数
+     * @return ID 数组
+     * @throws IdGenException 任意一个 ID 获取失败
+     */
+    default long[] nextIds(String bizTag, int n) {
+        if (n <= 0) {
+            throw new IllegalArgumentException("n 必须大于 0");
+        }
+        long[] ids = new long[n];
+        for (int i = 0; i < n; i++) {
+            Result result = nextId(bizTag);
+            if (result.getStatus() != Status.SUCCESS) {
+                throw new IdGenException(result.getId(), "获取 ID 失败, bizTag=" + bizTag);
+            }
+            ids[i] = result.getId();
+        }
+        return ids;
+    }
+
     /**
      * 初始化
      */
@@ -0,0 +1,39 @@
+package com.wenziyue.uid.core;
+
+import com.wenziyue.uid.common.IdGenException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * 响应式 ID 生成器接口，供 WebFlux 等运行在事件循环线程上的服务使用：
+ * 任何情况下都不会在订阅方线程上阻塞，需要访问数据库或等待号段时切换到其他线程执行。
+ * 失败时以 IdGenException 结束，code 与 Result 中的异常码一致
+ *
+ * @author wenziyue
+ */
+public interface ReactiveIdGen {
+
+    /**
+     * 获取默认业务标签（wenziyue.uid.biz-tag）的下一个唯一 ID
+     *
+     * @throws IdGenException 通过 Mono.error 传递
+     */
+    Mono<Long> nextId();
+
+    /**
+     * 获取指定业务标签的下一个唯一 ID
+     *
+     * @param bizTag 业务标签，对应 leaf_alloc.biz_tag
+     * @throws IdGenException 通过 Mono.error 传递
+     */
+    Mono<Long> nextId(String bizTag);
+
+    /**
+     * 批量获取指定业务标签的 n 个唯一 ID
+     *
+     * @param bizTag 业务标签
+     * @param n      需要的 ID 个数
+     * @throws IdGenException 通过 Flux.error 传递
+     */
+    Flux<Long> nextIds(String bizTag, int n);
+}
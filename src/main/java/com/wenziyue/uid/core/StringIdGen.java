@@ -0,0 +1,94 @@
+package com.wenziyue.uid.core;
+
+import com.wenziyue.uid.codec.IdEncoder;
+import com.wenziyue.uid.common.IdGenException;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * 字符串 ID：在 IdGen 之上按 wenziyue.uid.encoding 配置的字母表编码（可选混淆），
+ * 取号走 nextLongId，写入 char[] / ByteBuffer 的版本在成功路径上不创建任何对象
+ *
+ * @author wenziyue
+ */
+public class StringIdGen {
+
+    private final IdGen idGen;
+
+    private final IdEncoder encoder;
+
+    public StringIdGen(IdGen idGen, IdEncoder encoder) {
+        this.idGen = idGen;
+        this.encoder = encoder;
+    }
+
+    /**
+     * 默认业务标签的下一个字符串 ID
+     *
+     * @throws IdGenException 获取失败
+     */
+    public String nextStringId() {
+        return encoder.encode(idGen.nextLongId());
+    }
+
+    /**
+     * 指定业务标签的下一个字符串 ID
+     *
+     * @throws IdGenException 获取失败
+     */
+    public String nextStringId(String bizTag) {
+        return encoder.encode(idGen.nextLongId(bizTag));
+    }
+
+    /**
+     * 取号并写入 dst[offset, offset + 返回值)，先检查空间再取号，避免空间不足时浪费 ID
+     *
+     * @param bizTag 业务标签
+     * @param dst    可复用的数组，从 offset 开始至少 getMaxLength() 个位置
+     * @param offset 起始位置
+     * @return 写入的字符数
+     * @throws IdGenException 获取失败
+     */
+    public int nextStringId(String bizTag, char[] dst, int offset) {
+        if (offset < 0 || dst.length - offset < encoder.getMaxLength()) {
+            throw new IndexOutOfBoundsException("dst 从 " + offset + " 开始至少需要 " + encoder.getMaxLength() + " 个位置");
+        }
+        return encoder.encode(idGen.nextLongId(bizTag), dst, offset);
+    }
+
+    /**
+     * 取号并以 ASCII 字节写入 dst 的当前位置，写完后 position 前移
+     *
+     * @param bizTag 业务标签
+     * @param dst    可复用的缓冲区，剩余空间至少 getMaxLength() 字节
+     * @return 写入的字节数
+     * @throws IdGenException 获取失败
+     */
+    public int nextStringId(String bizTag, ByteBuffer dst) {
+        if (dst.remaining() < encoder.getMaxLength()) {
+            throw new BufferOverflowException();
+        }
+        return encoder.encode(idGen.nextLongId(bizTag), dst);
+    }
+
+    /**
+     * 把字符串 ID 还原为 long ID
+     *
+     * @throws IllegalArgumentException 不是当前配置编码出的字符串
+     */
+    public long decode(CharSequence stringId) {
+        return encoder.decode(stringId);
+    }
+
+    /**
+     * 编码结果的最大长度，用于分配可复用的缓冲区
+     */
+    public int getMaxLength() {
+        return encoder.getMaxLength();
+    }
+
+    public IdEncoder getEncoder() {
+        return encoder;
+    }
+}
@@ -0,0 +1,155 @@
+package com.wenziyue.uid.metrics;
+
+import com.wenziyue.uid.segment.Segment;
+import com.wenziyue.uid.segment.SegmentBuffer;
+import com.wenziyue.uid.segment.SegmentBufferListener;
+import com.wenziyue.uid.segment.SegmentIdGeneratorImpl;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Segment 发号器的 Micrometer 指标，按 bizTag 打标签。
+ * 所有指标都是在采集时从 SegmentBuffer 的统计值中读取（FunctionCounter / FunctionTimer / Gauge），
+ * 不在 nextId 上做任何记录，因此不会给发号路径带来额外的分配或竞争
+ *
+ * @author wenziyue
+ */
+public class SegmentUidMetrics implements MeterBinder, SegmentBufferListener {
+
+    private static final String PREFIX = "wenziyue.uid";
+    private static final String TAG_BIZ_TAG = "bizTag";
+
+    private final SegmentIdGeneratorImpl generator;
+
+    private final List<MeterRegistry> registries = new CopyOnWriteArrayList<>();
+
+    /**
+     * 每个 bizTag 注册过的指标，tag 被移除时一并注销
+     */
+    private final Map<String, List<Meter>> meters = new ConcurrentHashMap<>();
+
+    private final AtomicBoolean listening = new AtomicBoolean(false);
+
+    public SegmentUidMetrics(SegmentIdGeneratorImpl generator) {
+        this.generator = generator;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        registries.add(registry);
+        bindCache(registry);
+        bindExecutor(registry);
+        if (listening.compareAndSet(false, true)) {
+            // 注册监听时会对已存在的 buffer 回调 onCreated
+            generator.addBufferListener(this);
+        } else {
+            generator.getBuffers().forEach(buffer -> bindBuffer(registry, buffer));
+        }
+    }
+
+    @Override
+    public void onCreated(SegmentBuffer buffer) {
+        registries.forEach(registry -> bindBuffer(registry, buffer));
+    }
+
+    @Override
+    public void onRemoved(SegmentBuffer buffer) {
+        List<Meter> removed = meters.remove(buffer.getKey());
+        if (removed != null) {
+            removed.forEach(meter -> registries.forEach(registry -> registry.remove(meter)));
+        }
+    }
+
+    private void bindBuffer(MeterRegistry registry, SegmentBuffer buffer) {
+        Tags tags = Tags.of(TAG_BIZ_TAG, buffer.getKey());
+        List<Meter> list = meters.computeIfAbsent(buffer.getKey(), k -> new CopyOnWriteArrayList<>());
+
+        list.add(FunctionCounter.builder(PREFIX + ".ids", buffer, SegmentBuffer::getIssuedIds)
+                .description("已发放的 ID 数")
+                .tags(tags)
+                .register(registry));
+        list.add(FunctionCounter.builder(PREFIX + ".segment.switches", buffer, b -> b.getStats().getSwitches().sum())
+                .description("切段次数")
+                .tags(tags)
+                .register(registry));
+        list.add(FunctionCounter.builder(PREFIX + ".segment.not.ready", buffer, b -> b.getStats().getNotReady().sum())
+                .description("当前段用完时下一段尚未就绪的次数")
+                .tags(tags)
+                .register(registry));
+        list.add(FunctionCounter.builder(PREFIX + ".segment.unavailable", buffer, b -> b.getStats().getUnavailable().sum())
+                .description("等待超时仍无可用号段（-3）的次数")
+                .tags(tags)
+                .register(registry));
+        list.add(Gauge.builder(PREFIX + ".segment.ready", buffer, SegmentBuffer::getReadyCount)
+                .description("已预加载就绪的号段数")
+                .tags(tags)
+                .register(registry));
+        list.add(Gauge.builder(PREFIX + ".segment.reserve", buffer, SegmentBuffer::getReserveCount)
+                .description("保留的应急号段数")
+                .tags(tags)
+                .register(registry));
+        list.add(FunctionCounter.builder(PREFIX + ".segment.reserve.used", buffer, b -> b.getStats().getReserveUsed().sum())
+                .description("加载下一段失败时启用应急号段的次数")
+                .tags(tags)
+                .register(registry));
+        list.add(Gauge.builder(PREFIX + ".segment.remaining", buffer, SegmentUidMetrics::remaining)
+                .description("当前段剩余可发放的 ID 数")
+                .tags(tags)
+                .register(registry));
+        list.add(FunctionTimer.builder(PREFIX + ".dao.fetch", buffer,
+                        b -> b.getStats().getFetchCount().sum(),
+                        b -> b.getStats().getFetchNanos().sum(),
+                        TimeUnit.NANOSECONDS)
+                .description("访问数据库申请号段的耗时")
+                .tags(tags)
+                .register(registry));
+        list.add(FunctionCounter.builder(PREFIX + ".dao.fetch.errors", buffer, b -> b.getStats().getFetchErrors().sum())
+                .description("访问数据库申请号段失败的次数")
+                .tags(tags)
+                .register(registry));
+    }
+
+    private void bindCache(MeterRegistry registry) {
+        Gauge.builder(PREFIX + ".cache.size", generator, g -> g.getBuffers().size())
+                .description("本地缓存的 tag 数")
+                .register(registry);
+        FunctionCounter.builder(PREFIX + ".cache.evictions", generator, SegmentIdGeneratorImpl::getEvictions)
+                .description("被淘汰的空闲 tag 数")
+                .register(registry);
+        Gauge.builder(PREFIX + ".cache.evicted.ranges", generator, SegmentIdGeneratorImpl::getEvictedRangeTags)
+                .description("被淘汰后保留了未发放区间的 tag 数")
+                .register(registry);
+    }
+
+    private void bindExecutor(MeterRegistry registry) {
+        if (!(generator.getTaskExecutor() instanceof ThreadPoolTaskExecutor)) {
+            // 虚拟线程等非线程池的 executor 没有队列与活跃线程数
+            return;
+        }
+        ThreadPoolTaskExecutor executor = (ThreadPoolTaskExecutor) generator.getTaskExecutor();
+        Gauge.builder(PREFIX + ".executor.queue.size", executor, e -> e.getThreadPoolExecutor().getQueue().size())
+                .description("号段预加载线程池排队任务数")
+                .register(registry);
+        Gauge.builder(PREFIX + ".executor.active", executor, ThreadPoolTaskExecutor::getActiveCount)
+                .description("号段预加载线程池活跃线程数")
+                .register(registry);
+    }
+
+    private static double remaining(SegmentBuffer buffer) {
+        Segment segment = buffer.getCurrent();
+        return segment == null ? 0 : Math.max(0, segment.getIdle() - 1);
+    }
+}
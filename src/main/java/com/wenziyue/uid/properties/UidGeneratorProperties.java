@@ -1,10 +1,15 @@
 package com.wenziyue.uid.properties;
 
+import com.wenziyue.uid.codec.IdEncoder;
+import com.wenziyue.uid.segment.SegmentSqlDialect;
 import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
 import javax.annotation.PostConstruct;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * UID 生成器的配置属性类。
@@ -16,10 +21,10 @@ import javax.annotation.PostConstruct;
 @ConfigurationProperties(prefix = "wenziyue.uid")
 public class UidGeneratorProperties {
 
-//    /**
-//     * UID 生成策略，支持 "segment" 或 "snowflake"。
-//     */
-//    private String mode = "segment";
+    /**
+     * UID 生成策略，支持 "segment" 或 "snowflake"。
+     */
+    private String mode = "segment";
 
     /**
      * 业务标签，用于区分不同的业务线。
@@ -36,32 +41,577 @@ public class UidGeneratorProperties {
      */
     private int prepareNextPercent = 80;
 
+    /**
+     * 每个 bizTag 缓存的号段总数（当前段 + 预加载段），默认 2 即双 buffer，适用于 Segment 模式。
+     * 调大后会在后台多预取几段，用更多的号段换取数据库抖动时更少的发号失败。
+     */
+    private int segmentCount = 2;
+
+    /**
+     * 当前段用完且下一段未就绪时，发号线程最多挂起等待的时间，超时返回 -3，适用于 Segment 模式。
+     */
+    private Duration segmentWaitTimeout = Duration.ofMillis(50);
+
+    /**
+     * 合并预加载请求时额外等待的时间窗口，适用于 Segment 模式。
+     * 默认 0：不额外等待，加载任务开始执行之前到达的多个 tag 的预加载请求合并为一次批量申请；
+     * tag 很多且数据库连接紧张时可以设置几毫秒，用更大的合并批次换取稍晚的预加载。
+     */
+    private Duration fetchCoalesceWindow = Duration.ZERO;
+
+    /**
+     * 一次批量申请最多包含的 tag 数，适用于 Segment 模式。
+     */
+    private int fetchBatchSize = 64;
+
+    /**
+     * 每个线程一次从当前段领取的 ID 个数，默认 0 不开启，适用于 Segment 模式。
+     * 开启后线程在领取的小段内本地发号，不再每次对共享计数器做原子自增；同一线程内 ID 递增，不同线程之间不再严格递增，
+     * 停机或淘汰时已领取未发放的 ID 会被丢弃。建议 64 ~ 1024，且远小于 step。
+     */
+    private int threadChunkSize = 0;
+
+    /**
+     * 号段预加载线程池配置，适用于 Segment 模式。
+     */
+    private PrefetchExecutor prefetchExecutor = new PrefetchExecutor();
+
+    /**
+     * segmentUidScheduler 的线程数，负责 tag 列表刷新、合并窗口计时与 Snowflake 心跳。
+     */
+    private int schedulerPoolSize = 2;
+
+    /**
+     * 从 leaf_alloc 增量刷新 tag 列表（按 update_time 水位）的间隔，适用于 Segment 模式。
+     */
+    private Duration cacheRefreshInterval = Duration.ofSeconds(60);
+
     /**
      * 初始 ID，适用于 Segment 模式。
      */
     private long initId = 1L;
 
-//    /**
-//     * 工作节点 ID，适用于 Snowflake 模式。
-//     */
-//    private long workerId = 1L;
-//
-//    /**
-//     * 数据中心 ID，适用于 Snowflake 模式。
-//     */
-//    private long datacenterId = 1L;
+    /**
+     * 动态步长配置，适用于 Segment 模式。
+     */
+    private DynamicStep dynamicStep = new DynamicStep();
+
+    /**
+     * 启动预热配置，适用于 Segment 模式。
+     */
+    private Warmup warmup = new Warmup();
+
+    /**
+     * 本地号段 checkpoint 配置，适用于 Segment 模式。
+     */
+    private Checkpoint checkpoint = new Checkpoint();
+
+    /**
+     * 每个 bizTag 额外保留的应急号段数，默认 0 不保留，适用于 Segment 模式。
+     * 应急号段在数据库正常时后台申请，与当前段、预加载段分开存放，只在加载下一段失败时才会启用。
+     */
+    private int reserveSegments = 0;
+
+    /**
+     * 申请号段的熔断配置，适用于 Segment 模式。
+     */
+    private CircuitBreaker circuitBreaker = new CircuitBreaker();
+
+    /**
+     * 空闲 tag 淘汰配置，适用于 Segment 模式。
+     */
+    private Eviction eviction = new Eviction();
+
+    /**
+     * leaf_alloc 分片配置，适用于 Segment 模式。
+     */
+    private Sharding sharding = new Sharding();
+
+    /**
+     * 按时间有序的 ID 配置，适用于 Segment 模式。
+     */
+    private TimeOrdered timeOrdered = new TimeOrdered();
+
+    /**
+     * 工作节点 ID（0 ~ 31），适用于 Snowflake 模式。
+     * 小于 0 时启动时通过 leaf_worker 表自动分配 10 位节点号（0 ~ 1023），此时忽略 datacenterId。
+     */
+    private long workerId = -1L;
+
+    /**
+     * 数据中心 ID（0 ~ 31），适用于 Snowflake 模式，仅在手动指定 workerId 时生效。
+     */
+    private long datacenterId = 1L;
+
+    /**
+     * Snowflake 模式的其他配置。
+     */
+    private Snowflake snowflake = new Snowflake();
+
+    /**
+     * 号段的存储方式，适用于 Segment 模式：db（默认，leaf_alloc 表，按 JdbcTemplate / R2DBC 自动选择）或 file（本地文件，单节点使用）。
+     */
+    private String store = "db";
+
+    /**
+     * store=file 时的本地文件配置。
+     */
+    private FileStore fileStore = new FileStore();
+
+    /**
+     * StringIdGen 的字符串编码配置，两种模式均适用。
+     */
+    private Encoding encoding = new Encoding();
+
+    /**
+     * 申请号段使用的 SQL 方言（MYSQL / POSTGRESQL / H2 / GENERIC），不配置时按数据库产品名自动识别，适用于 Segment 模式。
+     */
+    private SegmentSqlDialect dialect;
 
     /**
      * 是否自动创建表，适用于 Segment 模式。
      */
     private boolean autoCreateTable = true;
 
+    /**
+     * 首次使用 leaf_alloc 中不存在的 tag 时是否自动创建（从 0 开始发号），默认关闭：不存在的 tag 返回 -2，适用于 Segment 模式。
+     */
+    private boolean autoCreateTag = false;
+
     @PostConstruct
     public void validate() {
         log.info("wenziyue.uid.prepareNextPercent 配置: {}", prepareNextPercent);
         if (prepareNextPercent < 1 || prepareNextPercent > 100) {
             throw new IllegalArgumentException("配置中prepareNextPercent 必须在 1 ~ 100 之间");
         }
+        if (!"segment".equals(mode) && !"snowflake".equals(mode)) {
+            throw new IllegalArgumentException("配置中mode 只支持 segment 或 snowflake");
+        }
+        if (!"db".equals(store) && !"file".equals(store)) {
+            throw new IllegalArgumentException("配置中store 只支持 db 或 file");
+        }
+        if ("file".equals(store) && (fileStore.getPath() == null || fileStore.getPath().trim().isEmpty()
+                || fileStore.getCompactThreshold() < 1)) {
+            throw new IllegalArgumentException("配置中fileStore.path 不能为空，fileStore.compactThreshold 必须大于 0");
+        }
+        if (encoding.getAlphabet() == null) {
+            throw new IllegalArgumentException("配置中encoding.alphabet 不能为空");
+        }
+        // 字母表非法时由 IdEncoder 抛出具体原因
+        new IdEncoder(IdEncoder.alphabet(encoding.getAlphabet()));
+        if (encoding.isObfuscate() && encoding.getKey() == 0) {
+            throw new IllegalArgumentException("配置中encoding.obfuscate 开启时必须配置非 0 的 encoding.key");
+        }
+        if (workerId > 31 || datacenterId < 0 || datacenterId > 31) {
+            throw new IllegalArgumentException("配置中workerId、datacenterId 必须在 0 ~ 31 之间");
+        }
+        if (segmentCount < 2) {
+            throw new IllegalArgumentException("配置中segmentCount 必须大于等于 2");
+        }
+        if (segmentWaitTimeout == null || segmentWaitTimeout.isNegative()) {
+            throw new IllegalArgumentException("配置中segmentWaitTimeout 不能为负数");
+        }
+        if (warmup.isEnabled()) {
+            log.info("wenziyue.uid.warmup 配置: tags={}, parallelism={}, timeout={}",
+                    warmup.getTags(), warmup.getParallelism(), warmup.getTimeout());
+            if (warmup.getParallelism() < 1) {
+                throw new IllegalArgumentException("配置中warmup.parallelism 必须大于 0");
+            }
+            if (warmup.getTimeout() == null || warmup.getTimeout().toMillis() <= 0) {
+                throw new IllegalArgumentException("配置中warmup.timeout 必须大于 0");
+            }
+        }
+        if (checkpoint.isEnabled() && (checkpoint.getPath() == null || checkpoint.getPath().trim().isEmpty())) {
+            throw new IllegalArgumentException("配置中checkpoint.path 不能为空");
+        }
+        if (fetchCoalesceWindow == null || fetchCoalesceWindow.isNegative()) {
+            throw new IllegalArgumentException("配置中fetchCoalesceWindow 不能为负数");
+        }
+        if (fetchBatchSize < 1) {
+            throw new IllegalArgumentException("配置中fetchBatchSize 必须大于 0");
+        }
+        if (threadChunkSize < 0 || threadChunkSize > step) {
+            throw new IllegalArgumentException("配置中threadChunkSize 必须在 0 ~ step 之间");
+        }
+        if (prefetchExecutor.getCorePoolSize() < 1 || prefetchExecutor.getMaxPoolSize() < prefetchExecutor.getCorePoolSize()
+                || prefetchExecutor.getQueueCapacity() < 0) {
+            throw new IllegalArgumentException("配置中prefetchExecutor 必须满足 1 <= corePoolSize <= maxPoolSize，queueCapacity >= 0");
+        }
+        if (schedulerPoolSize < 1) {
+            throw new IllegalArgumentException("配置中schedulerPoolSize 必须大于 0");
+        }
+        if (cacheRefreshInterval == null || cacheRefreshInterval.toMillis() <= 0) {
+            throw new IllegalArgumentException("配置中cacheRefreshInterval 必须大于 0");
+        }
+        if (reserveSegments < 0) {
+            throw new IllegalArgumentException("配置中reserveSegments 不能为负数");
+        }
+        if (circuitBreaker.isEnabled()) {
+            if (circuitBreaker.getWindow() == null || circuitBreaker.getWindow().toMillis() <= 0) {
+                throw new IllegalArgumentException("配置中circuitBreaker.window 必须大于 0");
+            }
+            if (circuitBreaker.getMinimumCalls() < 1) {
+                throw new IllegalArgumentException("配置中circuitBreaker.minimumCalls 必须大于 0");
+            }
+            if (circuitBreaker.getFailureRateThreshold() < 1 || circuitBreaker.getFailureRateThreshold() > 100) {
+                throw new IllegalArgumentException("配置中circuitBreaker.failureRateThreshold 必须在 1 ~ 100 之间");
+            }
+            if (circuitBreaker.getInitialBackoff() == null || circuitBreaker.getInitialBackoff().toMillis() <= 0
+                    || circuitBreaker.getMaxBackoff() == null
+                    || circuitBreaker.getMaxBackoff().compareTo(circuitBreaker.getInitialBackoff()) < 0) {
+                throw new IllegalArgumentException("配置中circuitBreaker 必须满足 0 < initialBackoff <= maxBackoff");
+            }
+        }
+        if (eviction.isEnabled()) {
+            log.info("wenziyue.uid.eviction 配置: maxTags={}, idleTimeout={}, interval={}, keepUnusedRanges={}",
+                    eviction.getMaxTags(), eviction.getIdleTimeout(), eviction.getInterval(), eviction.isKeepUnusedRanges());
+            if (eviction.getMaxTags() < 1) {
+                throw new IllegalArgumentException("配置中eviction.maxTags 必须大于 0");
+            }
+            if (eviction.getIdleTimeout() == null || eviction.getIdleTimeout().toMillis() <= 0
+                    || eviction.getInterval() == null || eviction.getInterval().toMillis() <= 0) {
+                throw new IllegalArgumentException("配置中eviction.idleTimeout、eviction.interval 必须大于 0");
+            }
+        }
+        if (!sharding.getTags().isEmpty()) {
+            log.info("wenziyue.uid.sharding 配置: tags={}, shards={}, contentionThreshold={}",
+                    sharding.getTags(), sharding.getShards(), sharding.getContentionThreshold());
+            if (sharding.getShards() < 2 || (long) sharding.getShards() * step > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("配置中sharding.shards 必须大于 1，且 shards * step 不能超过 int 上限");
+            }
+            if (sharding.getTags().stream().anyMatch(tag -> tag.contains("#"))) {
+                throw new IllegalArgumentException("配置中sharding.tags 不能包含 #");
+            }
+            if (sharding.getContentionThreshold() == null || sharding.getContentionThreshold().isNegative()) {
+                throw new IllegalArgumentException("配置中sharding.contentionThreshold 不能为负数");
+            }
+            if (dynamicStep.isEnabled()) {
+                throw new IllegalArgumentException("配置中sharding 与 dynamicStep 不能同时开启，分片按固定步长切块");
+            }
+        }
+        if (timeOrdered.isEnabled()) {
+            log.info("wenziyue.uid.timeOrdered 配置: epoch={}, timeUnit={}, sequenceBits={}",
+                    timeOrdered.getEpoch(), timeOrdered.getTimeUnit(), timeOrdered.getSequenceBits());
+            if (timeOrdered.getTimeUnit() == null || timeOrdered.getTimeUnit().toMillis() < 1) {
+                throw new IllegalArgumentException("配置中timeOrdered.timeUnit 不能小于 1ms");
+            }
+            if (timeOrdered.getSequenceBits() < 16 || timeOrdered.getSequenceBits() > 52) {
+                throw new IllegalArgumentException("配置中timeOrdered.sequenceBits 必须在 16 ~ 52 之间");
+            }
+            long elapsed = (System.currentTimeMillis() - timeOrdered.getEpoch()) / timeOrdered.getTimeUnit().toMillis();
+            if (elapsed < 0 || elapsed >= 1L << (63 - timeOrdered.getSequenceBits())) {
+                throw new IllegalArgumentException("配置中timeOrdered.epoch 必须早于当前时间，且时间前缀不能超出 63 - sequenceBits 位");
+            }
+        }
+        if (dynamicStep.isEnabled()) {
+            log.info("wenziyue.uid.dynamicStep 配置: minStep={}, maxStep={}, segmentDuration={}",
+                    dynamicStep.getMinStep(), dynamicStep.getMaxStep(), dynamicStep.getSegmentDuration());
+            if (dynamicStep.getMinStep() < 1 || dynamicStep.getMinStep() > step || step > dynamicStep.getMaxStep()) {
+                throw new IllegalArgumentException("配置中dynamicStep 必须满足 1 <= minStep <= step <= maxStep");
+            }
+            if (dynamicStep.getSegmentDuration() == null || dynamicStep.getSegmentDuration().toMillis() <= 0) {
+                throw new IllegalArgumentException("配置中dynamicStep.segmentDuration 必须大于 0");
+            }
+        }
+    }
+
+    /**
+     * 动态步长：根据号段的使用时长自动放大或缩小下一次申请的步长
+     */
+    @Data
+    public static class DynamicStep {
+
+        /**
+         * 是否开启动态步长，默认关闭（始终使用 step）。
+         */
+        private boolean enabled = false;
+
+        /**
+         * 步长下限。
+         */
+        private int minStep = 1000;
+
+        /**
+         * 步长上限。
+         */
+        private int maxStep = 1000000;
+
+        /**
+         * 期望的单个号段使用时长，短于该值步长翻倍，长于 2 倍该值步长减半。
+         */
+        private Duration segmentDuration = Duration.ofMinutes(15);
+    }
+
+    /**
+     * 号段预加载线程池（bean 名 segmentUidTaskExecutor）
+     */
+    @Data
+    public static class PrefetchExecutor {
+
+        /**
+         * 核心线程数。
+         */
+        private int corePoolSize = 5;
+
+        /**
+         * 最大线程数。
+         */
+        private int maxPoolSize = 10;
+
+        /**
+         * 队列容量，队列满且线程数达到上限后新的预加载任务会被拒绝（按加载失败处理，不会抛给发号线程）。
+         */
+        private int queueCapacity = 100;
+
+        /**
+         * 非核心线程的空闲存活时间。
+         */
+        private Duration keepAlive = Duration.ofSeconds(60);
+
+        /**
+         * 是否使用虚拟线程（每个任务一个虚拟线程，忽略以上线程池配置），需要 JDK 21+，低版本 JDK 上自动退回线程池。
+         */
+        private boolean virtualThreads = false;
+    }
+
+    /**
+     * 启动预热：在 ApplicationReadyEvent 中并行装好各 tag 的当前段与预加载段，预热结束前服务不会进入 ready 状态
+     */
+    @Data
+    public static class Warmup {
+
+        /**
+         * 是否开启启动预热，默认关闭（首次请求时同步加载首段）。
+         */
+        private boolean enabled = false;
+
+        /**
+         * 需要预热的 tag，为空时预热 leaf_alloc 中的全部 tag。
+         */
+        private List<String> tags = new ArrayList<>();
+
+        /**
+         * 并行预热的线程数。
+         */
+        private int parallelism = 8;
+
+        /**
+         * 预热的最长等待时间，超时后未完成的 tag 退回到首次请求时加载。
+         */
+        private Duration timeout = Duration.ofSeconds(10);
+    }
+
+    /**
+     * 本地号段 checkpoint：优雅停机时把未用完的号段写入本地文件，重启后优先从中发号
+     */
+    @Data
+    public static class Checkpoint {
+
+        /**
+         * 是否开启本地 checkpoint，默认关闭（重启后丢弃未用完的号段）。
+         */
+        private boolean enabled = false;
+
+        /**
+         * checkpoint 文件路径，同一台机器上的多个实例可以共用，但不能在连接不同数据库的实例之间共用。
+         */
+        private String path = "uid-segment.checkpoint";
     }
 
+    /**
+     * 后台预加载号段的熔断：某个 tag 在时间窗内失败率过高时暂停为它预加载，避免数据库故障时被预加载线程反复冲击
+     */
+    @Data
+    public static class CircuitBreaker {
+
+        /**
+         * 是否开启熔断，默认关闭。
+         */
+        private boolean enabled = false;
+
+        /**
+         * 统计失败率的时间窗，每个 tag 独立统计。
+         */
+        private Duration window = Duration.ofSeconds(10);
+
+        /**
+         * 时间窗内至少预加载多少次才计算失败率，避免偶发的一两次失败就熔断。
+         */
+        private int minimumCalls = 20;
+
+        /**
+         * 失败率（百分比）达到该值时熔断，1 ~ 100。
+         */
+        private int failureRateThreshold = 50;
+
+        /**
+         * 首次熔断时长，之后每次试探失败翻倍。
+         */
+        private Duration initialBackoff = Duration.ofSeconds(1);
+
+        /**
+         * 最长熔断时长。
+         */
+        private Duration maxBackoff = Duration.ofSeconds(30);
+    }
+
+    /**
+     * 空闲 tag 淘汰：定期淘汰长时间没有发号的 tag，并限制本地缓存的 tag 总数
+     */
+    @Data
+    public static class Eviction {
+
+        /**
+         * 是否开启淘汰，默认关闭（tag 一旦加载就常驻内存）。
+         */
+        private boolean enabled = false;
+
+        /**
+         * 本地最多缓存的 tag 个数，超出时按最近活跃时间从早到晚淘汰。
+         */
+        private int maxTags = 10000;
+
+        /**
+         * 超过多久没有发号的 tag 会被淘汰。
+         */
+        private Duration idleTimeout = Duration.ofMinutes(30);
+
+        /**
+         * 淘汰检查的间隔，tag 的空闲时间按此粒度判断。
+         */
+        private Duration interval = Duration.ofMinutes(1);
+
+        /**
+         * 是否保留被淘汰 tag 未发放的号段区间，该 tag 再次使用时优先从中发号，默认开启。
+         * 最多保留 maxTags 个 tag 的区间，开启 checkpoint 时停机一并写入。
+         */
+        private boolean keepUnusedRanges = true;
+    }
+
+    /**
+     * leaf_alloc 分片：把热点 tag 拆到多行申请号段，分散行锁竞争
+     */
+    @Data
+    public static class Sharding {
+
+        /**
+         * 需要分片的 tag，为空时不分片。开启后所有节点必须使用相同的配置。
+         */
+        private List<String> tags = new ArrayList<>();
+
+        /**
+         * 每个 tag 拆成的行数，一旦使用不能再修改。
+         */
+        private int shards = 4;
+
+        /**
+         * 申请号段耗时超过该值时，下次改用下一个分片。
+         */
+        private Duration contentionThreshold = Duration.ofMillis(50);
+    }
+
+    /**
+     * 按时间有序的 ID：申请号段时把 leaf_alloc.max_id 抬到不低于「当前时间前缀 << sequenceBits」，
+     * ID 的高位近似为号段申请时间，低位仍由 leaf_alloc 递增保证唯一
+     */
+    @Data
+    public static class TimeOrdered {
+
+        /**
+         * 是否开启，默认关闭。开启后 ID 明显变大，关闭后从已抬高的 max_id 继续递增，不会重复。
+         */
+        private boolean enabled = false;
+
+        /**
+         * 时间前缀的起点（毫秒），默认 2020-01-01 00:00:00 UTC。
+         */
+        private long epoch = 1577836800000L;
+
+        /**
+         * 时间前缀的粒度，默认 1 秒。
+         */
+        private Duration timeUnit = Duration.ofSeconds(1);
+
+        /**
+         * 低位序列的位数，默认 32：每个时间单位内最多 2^32 个 ID 仍与时间对齐，超出时 ID 领先于时间但仍然递增。
+         */
+        private int sequenceBits = 32;
+    }
+
+    /**
+     * 字符串 ID 编码
+     */
+    @Data
+    public static class Encoding {
+
+        /**
+         * 字母表：base62（默认）、crockford（Crockford Base32，不区分大小写），或直接写出字母表字符。
+         */
+        private String alphabet = "base62";
+
+        /**
+         * 是否左侧补齐到最大长度（base62 为 11 位，crockford 为 13 位），默认输出最短形式。
+         */
+        private boolean fixedLength = false;
+
+        /**
+         * 是否先用可逆置换打乱 ID，使连续的号段 ID 对外不可猜测，默认关闭。
+         */
+        private boolean obfuscate = false;
+
+        /**
+         * 置换的密钥，obfuscate 开启时必须配置且上线后不可修改，否则已发出的字符串 ID 无法还原。
+         */
+        private long key = 0L;
+    }
+
+    /**
+     * 本地文件号段存储：只追加的记录文件，每次申请号段都 fsync，只能被一个进程使用
+     */
+    @Data
+    public static class FileStore {
+
+        /**
+         * 文件路径，同目录下会额外创建 .lock 文件。
+         */
+        private String path = "uid-segment.store";
+
+        /**
+         * 记录数超过该值时压缩文件，只保留每个 tag 的最新值。
+         */
+        private int compactThreshold = 10000;
+    }
+
+    /**
+     * Snowflake 模式：41 位时间戳 + 10 位节点号 + 12 位序列号
+     */
+    @Data
+    public static class Snowflake {
+
+        /**
+         * 时间戳起点（毫秒），默认 2020-01-01 00:00:00 UTC，上线后不可修改。
+         */
+        private long epoch = 1577836800000L;
+
+        /**
+         * 可容忍的时钟回拨（毫秒），回拨不超过该值时沿用上次的时间戳继续发号，超过则返回异常码 -4。
+         */
+        private long maxBackwardMillis = 5;
+
+        /**
+         * 自动分配节点号时向 leaf_worker 上报心跳的间隔。
+         */
+        private Duration heartbeatInterval = Duration.ofSeconds(10);
+
+        /**
+         * leaf_worker 中超过该时长没有心跳的节点号视为已释放，可以被新节点复用。
+         */
+        private Duration leaseTimeout = Duration.ofMinutes(10);
+
+        /**
+         * 自动分配节点号时，若当前时间早于 leaf_worker 中该节点号上次记录的 update_time（时钟回拨），
+         * 最多等待该时长让时钟追上，超过则拒绝启动。
+         */
+        private Duration maxClockWait = Duration.ofSeconds(5);
+    }
 }
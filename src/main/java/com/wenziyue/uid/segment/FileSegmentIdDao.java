@@ -0,0 +1,441 @@
+package com.wenziyue.uid.segment;
+
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * 基于本地文件的号段分配，替代 leaf_alloc 表，供没有数据库的单节点部署、边缘节点与基准测试使用。
+ * <p>
+ * 文件是只追加的日志，每条记录是某个 tag 最新的 max_id：
+ * [length:int][crc32:int][tagLength:short][tag:UTF-8][maxId:long][step:int][updateTime:long]。
+ * 每次申请号段先追加记录并 fsync，成功后才返回新的 max_id，因此返回给发号器的号段一定已经落盘；
+ * 进程崩溃时末尾写了一半的记录 CRC 校验不通过，启动时丢弃（这条记录对应的号段从未返回过），不会重复发号；
+ * 损坏的记录之后还有有效记录时说明不是写了一半，而是文件中间损坏，截断会丢掉已经返回过的号段，此时拒绝启动。
+ * 记录数超过 compactThreshold 时把每个 tag 的最新值写入临时文件、fsync 后原子替换原文件。
+ * <p>
+ * 启动时对 path.lock 加排他锁，同一个文件只能被一个进程使用，多个节点不能共用
+ *
+ * @author wenziyue
+ */
+@Slf4j
+public class FileSegmentIdDao implements SegmentIdDao, Closeable {
+
+    /**
+     * 记录头：length + crc32
+     */
+    private static final int HEADER_SIZE = 8;
+
+    /**
+     * 记录体中除 tag 以外的部分：tagLength + maxId + step + updateTime
+     */
+    private static final int FIXED_PAYLOAD_SIZE = 2 + 8 + 4 + 8;
+
+    private final Path path;
+
+    private final int compactThreshold;
+
+    private final FileChannel lockChannel;
+
+    private final FileLock lock;
+
+    private FileChannel channel;
+
+    /**
+     * 每个 tag 最新的记录，按首次出现的顺序排列
+     */
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+
+    /**
+     * 当前文件中的记录数
+     */
+    private int records;
+
+    /**
+     * 写入失败且无法回滚时置为 true，之后拒绝继续写入：
+     * 否则后续记录会追加在残缺记录之后，重启时随残缺记录一起被丢弃，导致号段回退
+     */
+    private boolean broken;
+
+    public FileSegmentIdDao(Path path, int compactThreshold) {
+        this.path = path.toAbsolutePath();
+        this.compactThreshold = compactThreshold;
+        try {
+            if (this.path.getParent() != null) {
+                Files.createDirectories(this.path.getParent());
+            }
+            this.lockChannel = FileChannel.open(Paths.get(this.path + ".lock"),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            this.lock = tryLock(lockChannel);
+            if (lock == null) {
+                lockChannel.close();
+                throw new IllegalStateException("号段文件 " + this.path + " 正在被其他进程使用");
+            }
+            this.channel = FileChannel.open(this.path,
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("打开号段文件失败：" + this.path, e);
+        }
+        try {
+            replay();
+        } catch (IOException | RuntimeException e) {
+            // 启动失败时释放文件锁，修复文件后可以在同一进程内重新打开
+            try {
+                close();
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            if (e instanceof IOException) {
+                throw new UncheckedIOException("读取号段文件失败：" + this.path, (IOException) e);
+            }
+            throw (RuntimeException) e;
+        }
+        log.info("[Segment UID] 使用本地号段文件：{}，共 {} 个 tag", this.path, entries.size());
+    }
+
+    @Override
+    public long nextMaxId(String bizTag, int step) {
+        return nextMaxId(bizTag, step, 0);
+    }
+
+    @Override
+    public synchronized long nextMaxId(String bizTag, int step, long floor) {
+        Entry entry = allocate(bizTag, step, floor);
+        append(Collections.singletonList(entry));
+        return entry.maxId;
+    }
+
+    @Override
+    public boolean supportsFloor() {
+        return true;
+    }
+
+    /**
+     * 专用区间只推进 max_id，记录中的 step 保持原值
+     */
+    @Override
+    public synchronized long allocateRange(String bizTag, int count, long floor) {
+        Entry current = entries.get(bizTag);
+        Entry entry = allocate(bizTag, count, floor);
+        if (current != null) {
+            entry = new Entry(bizTag, entry.maxId, current.step, entry.updateTime);
+        }
+        append(Collections.singletonList(entry));
+        return entry.maxId;
+    }
+
+    /**
+     * 批量申请：所有 tag 的记录一次写入、一次 fsync
+     */
+    @Override
+    public Map<String, Long> nextMaxIds(Map<String, Integer> steps) {
+        return nextMaxIds(steps, 0);
+    }
+
+    @Override
+    public synchronized Map<String, Long> nextMaxIds(Map<String, Integer> steps, long floor) {
+        List<Entry> allocated = new ArrayList<>(steps.size());
+        Map<String, Long> maxIds = new LinkedHashMap<>();
+        steps.forEach((bizTag, step) -> {
+            Entry entry = allocate(bizTag, step, floor);
+            allocated.add(entry);
+            maxIds.put(bizTag, entry.maxId);
+        });
+        append(allocated);
+        return maxIds;
+    }
+
+    @Override
+    public synchronized List<String> getAllTags() {
+        return new ArrayList<>(entries.keySet());
+    }
+
+    @Override
+    public synchronized Map<String, Long> getTagsUpdatedSince(long sinceMillis) {
+        Map<String, Long> tags = new LinkedHashMap<>();
+        entries.forEach((tag, entry) -> {
+            if (entry.updateTime >= sinceMillis) {
+                tags.put(tag, entry.updateTime);
+            }
+        });
+        return tags;
+    }
+
+    @Override
+    public synchronized boolean existsTag(String bizTag) {
+        return entries.containsKey(bizTag);
+    }
+
+    @Override
+    public synchronized boolean createTag(String bizTag, long maxId, int step) {
+        if (entries.containsKey(bizTag)) {
+            return false;
+        }
+        append(Collections.singletonList(new Entry(bizTag, maxId, step, System.currentTimeMillis())));
+        return true;
+    }
+
+    @Override
+    public boolean supportsCreateTag() {
+        return true;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            channel.close();
+        } finally {
+            lock.release();
+            lockChannel.close();
+        }
+    }
+
+    /**
+     * 计算 tag 的下一个 max_id，此时尚未写入文件，不修改内存状态
+     */
+    private Entry allocate(String bizTag, int step, long floor) {
+        Entry current = entries.get(bizTag);
+        long maxId = Math.max(current == null ? 0 : current.maxId, floor) + step;
+        return new Entry(bizTag, maxId, step, System.currentTimeMillis());
+    }
+
+    /**
+     * 追加记录并 fsync，落盘成功后才更新内存状态
+     */
+    private void append(List<Entry> batch) {
+        if (broken) {
+            throw new IllegalStateException("号段文件 " + path + " 上次写入失败且无法回滚，需要重启进程");
+        }
+        long start = -1;
+        try {
+            int size = 0;
+            List<byte[]> encoded = new ArrayList<>(batch.size());
+            for (Entry entry : batch) {
+                byte[] record = encode(entry);
+                encoded.add(record);
+                size += record.length;
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(size);
+            encoded.forEach(buffer::put);
+            buffer.flip();
+            start = channel.size();
+            long position = start;
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            rollback(start);
+            throw new UncheckedIOException("写入号段文件失败：" + path, e);
+        }
+        batch.forEach(entry -> entries.put(entry.tag, entry));
+        records += batch.size();
+        if (records >= compactThreshold) {
+            compact();
+        }
+    }
+
+    /**
+     * 截掉写了一半的记录
+     *
+     * @param start 本次写入前的文件长度，-1 表示还没开始写
+     */
+    private void rollback(long start) {
+        if (start < 0) {
+            return;
+        }
+        try {
+            channel.truncate(start);
+            channel.force(true);
+        } catch (IOException e) {
+            broken = true;
+            log.error("[Segment UID] 回滚号段文件 {} 失败，停止使用该文件", path, e);
+        }
+    }
+
+    /**
+     * 读取全部记录恢复每个 tag 的最新值。遇到不完整或 CRC 不匹配的记录时：
+     * 其后没有有效记录说明是末尾写了一半，截断文件；其后还有有效记录说明文件中间损坏，拒绝启动
+     *
+     * @throws IllegalStateException 损坏的记录之后还有有效记录
+     */
+    private void replay() throws IOException {
+        long size = channel.size();
+        long position = 0;
+        while (position < size) {
+            ByteBuffer payload = readRecord(position, size);
+            if (payload == null) {
+                break;
+            }
+            Entry entry = decode(payload);
+            entries.put(entry.tag, entry);
+            records++;
+            position += HEADER_SIZE + payload.capacity();
+        }
+        if (position < size) {
+            long next = findRecord(position + 1, size);
+            if (next >= 0) {
+                throw new IllegalStateException("号段文件 " + path + " 偏移 " + position + " 处的记录损坏，但偏移 " + next
+                        + " 处仍有有效记录，不是进程崩溃留下的残缺记录，截断会丢失已发放的号段，拒绝启动；请检查磁盘或从备份恢复该文件");
+            }
+            log.warn("[Segment UID] 号段文件 {} 末尾有 {} 字节不完整的记录（上次进程未正常写完），已丢弃", path, size - position);
+            channel.truncate(position);
+            channel.force(true);
+        }
+    }
+
+    /**
+     * 把每个 tag 的最新值写入临时文件，fsync 后原子替换原文件
+     */
+    private void compact() {
+        Path tmp = Paths.get(path + ".tmp");
+        try {
+            try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                for (Entry entry : entries.values()) {
+                    ByteBuffer buffer = ByteBuffer.wrap(encode(entry));
+                    while (buffer.hasRemaining()) {
+                        out.write(buffer);
+                    }
+                }
+                out.force(true);
+            }
+            Files.move(tmp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            forceDirectory();
+            channel.close();
+            channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            records = entries.size();
+            log.debug("[Segment UID] 压缩号段文件 {}，剩余 {} 条记录", path, records);
+        } catch (IOException e) {
+            // 原文件仍然完整，下次追加时再尝试压缩
+            log.warn("[Segment UID] 压缩号段文件失败：{}", path, e);
+        }
+    }
+
+    /**
+     * 把 rename 落盘；部分平台（例如 Windows）不支持打开目录，忽略
+     */
+    private void forceDirectory() {
+        Path dir = path.getParent();
+        if (dir == null) {
+            return;
+        }
+        try (FileChannel directory = FileChannel.open(dir, StandardOpenOption.READ)) {
+            directory.force(true);
+        } catch (IOException e) {
+            log.debug("[Segment UID] 无法 fsync 目录 {}：{}", dir, e.getMessage());
+        }
+    }
+
+    /**
+     * 文件已被其他进程锁定返回 null；同一进程内重复打开时 JDK 抛出 OverlappingFileLockException，同样按已被占用处理
+     */
+    private static FileLock tryLock(FileChannel channel) throws IOException {
+        try {
+            return channel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 读取 position 处的记录体，记录不完整、长度不合法或 CRC 不匹配时返回 null
+     *
+     * @return 读取完毕（position 为 0）的记录体
+     */
+    private ByteBuffer readRecord(long position, long size) throws IOException {
+        if (position + HEADER_SIZE > size) {
+            return null;
+        }
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        readFully(header, position);
+        header.flip();
+        int length = header.getInt();
+        int crc = header.getInt();
+        if (length < FIXED_PAYLOAD_SIZE || position + HEADER_SIZE + length > size) {
+            return null;
+        }
+        ByteBuffer payload = ByteBuffer.allocate(length);
+        readFully(payload, position + HEADER_SIZE);
+        if (crc32(payload.array()) != crc || FIXED_PAYLOAD_SIZE + (payload.getShort(0) & 0xFFFF) != length) {
+            return null;
+        }
+        payload.flip();
+        return payload;
+    }
+
+    /**
+     * 从 from 开始逐字节查找第一条有效记录
+     *
+     * @return 记录的偏移，没有时返回 -1
+     */
+    private long findRecord(long from, long size) throws IOException {
+        for (long position = from; position + HEADER_SIZE + FIXED_PAYLOAD_SIZE <= size; position++) {
+            if (readRecord(position, size) != null) {
+                return position;
+            }
+        }
+        return -1;
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("号段文件意外结束：" + path);
+            }
+            position += read;
+        }
+    }
+
+    private static byte[] encode(Entry entry) {
+        byte[] tag = entry.tag.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer payload = ByteBuffer.allocate(2 + tag.length + 8 + 4 + 8);
+        payload.putShort((short) tag.length).put(tag).putLong(entry.maxId).putInt(entry.step).putLong(entry.updateTime);
+        byte[] bytes = payload.array();
+        return ByteBuffer.allocate(HEADER_SIZE + bytes.length)
+                .putInt(bytes.length)
+                .putInt(crc32(bytes))
+                .put(bytes)
+                .array();
+    }
+
+    private static Entry decode(ByteBuffer payload) {
+        byte[] tag = new byte[payload.getShort()];
+        payload.get(tag);
+        return new Entry(new String(tag, StandardCharsets.UTF_8), payload.getLong(), payload.getInt(), payload.getLong());
+    }
+
+    private static int crc32(byte[] bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length);
+        return (int) crc.getValue();
+    }
+
+    @AllArgsConstructor
+    private static final class Entry {
+        private final String tag;
+        private final long maxId;
+        private final int step;
+        private final long updateTime;
+    }
+}
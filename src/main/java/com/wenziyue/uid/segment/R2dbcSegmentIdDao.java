@@ -0,0 +1,179 @@
+package com.wenziyue.uid.segment;
+
+import io.r2dbc.spi.ConnectionFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.r2dbc.connection.R2dbcTransactionManager;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import org.springframework.transaction.support.DefaultTransactionDefinition;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.AbstractMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * 基于 R2DBC 的号段申请，供没有 JDBC DataSource 的 WebFlux 服务使用。
+ * 在独立的新事务中先 UPDATE 再 SELECT（UPDATE 持有的行锁保证两条语句之间 max_id 不被其他节点修改），
+ * 语句只用标准 SQL，适用于所有提供 R2DBC 驱动的数据库。
+ * <p>
+ * 发号器的号段加载运行在预加载线程池上，因此 SegmentIdDao 的同步方法直接等待响应式结果；
+ * 事件循环线程上请使用 ReactiveIdGen，它不会在订阅方线程上调用这些方法
+ *
+ * @author wenziyue
+ */
+@Slf4j
+public class R2dbcSegmentIdDao implements SegmentIdDao {
+
+    /** 固定表名，不再做配置 */
+    private static final String TABLE = "leaf_alloc";
+
+    /**
+     * 同步方法等待数据库的最长时间
+     */
+    private static final Duration BLOCK_TIMEOUT = Duration.ofSeconds(10);
+
+    private final DatabaseClient client;
+
+    private final TransactionalOperator transactionalOperator;
+
+    public R2dbcSegmentIdDao(ConnectionFactory connectionFactory) {
+        this.client = DatabaseClient.create(connectionFactory);
+        DefaultTransactionDefinition definition = new DefaultTransactionDefinition(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.transactionalOperator = TransactionalOperator.create(new R2dbcTransactionManager(connectionFactory), definition);
+    }
+
+    /**
+     * 响应式申请号段
+     *
+     * @param bizTag 业务标签
+     * @param step   步长
+     * @return 新的 max_id
+     */
+    public Mono<Long> nextMaxIdReactive(String bizTag, int step) {
+        return nextMaxIdReactive(bizTag, step, 0);
+    }
+
+    /**
+     * 响应式带下限申请号段，新的 max_id 为 max(max_id, floor) + step
+     *
+     * @param bizTag 业务标签
+     * @param step   步长
+     * @param floor  max_id 的下限，小于等于 0 时不生效
+     * @return 新的 max_id
+     */
+    public Mono<Long> nextMaxIdReactive(String bizTag, int step, long floor) {
+        return nextMaxIdReactive(bizTag, step, floor, true);
+    }
+
+    /**
+     * @param updateStep 是否把 step 写入 step 列，申请批量取号的专用区间时为 false
+     */
+    private Mono<Long> nextMaxIdReactive(String bizTag, int step, long floor, boolean updateStep) {
+        long insertMaxId = Math.max(floor, 0) + step;
+        Mono<Long> update = client.sql("UPDATE " + TABLE + " SET max_id = CASE WHEN max_id > :floor THEN max_id ELSE :floor END + :step"
+                + (updateStep ? ", step = :step" : "") + " WHERE biz_tag = :bizTag")
+                .bind("floor", floor)
+                .bind("step", step)
+                .bind("bizTag", bizTag)
+                .fetch()
+                .rowsUpdated()
+                .flatMap(rows -> rows > 0
+                        ? client.sql("SELECT max_id FROM " + TABLE + " WHERE biz_tag = :bizTag")
+                                .bind("bizTag", bizTag)
+                                .map(row -> Objects.requireNonNull(row.get(0, Long.class)))
+                                .one()
+                        // 业务第一次使用，插一行
+                        : client.sql("INSERT INTO " + TABLE + " (biz_tag, max_id, step) VALUES (:bizTag, :maxId, :step)")
+                                .bind("bizTag", bizTag)
+                                .bind("maxId", insertMaxId)
+                                .bind("step", step)
+                                .fetch()
+                                .rowsUpdated()
+                                .thenReturn(insertMaxId));
+        return transactionalOperator.transactional(update)
+                .onErrorResume(DataIntegrityViolationException.class, e -> {
+                    // 其他节点抢先插入了这一行，重新走一次 UPDATE 即可
+                    log.info("[Segment UID] bizTag={} 已被其他节点初始化，重新申请号段", bizTag);
+                    return nextMaxIdReactive(bizTag, step, floor, updateStep);
+                });
+    }
+
+    @Override
+    public long nextMaxId(String bizTag, int step) {
+        return Objects.requireNonNull(nextMaxIdReactive(bizTag, step).block(BLOCK_TIMEOUT));
+    }
+
+    @Override
+    public long nextMaxId(String bizTag, int step, long floor) {
+        return Objects.requireNonNull(nextMaxIdReactive(bizTag, step, floor).block(BLOCK_TIMEOUT));
+    }
+
+    @Override
+    public boolean supportsFloor() {
+        return true;
+    }
+
+    @Override
+    public long allocateRange(String bizTag, int count, long floor) {
+        return Objects.requireNonNull(nextMaxIdReactive(bizTag, count, floor, false).block(BLOCK_TIMEOUT));
+    }
+
+    @Override
+    public List<String> getAllTags() {
+        return client.sql("SELECT biz_tag FROM " + TABLE)
+                .map(row -> row.get(0, String.class))
+                .all()
+                .collectList()
+                .block(BLOCK_TIMEOUT);
+    }
+
+    @Override
+    public Map<String, Long> getTagsUpdatedSince(long sinceMillis) {
+        return client.sql("SELECT biz_tag, update_time FROM " + TABLE + " WHERE update_time >= :since")
+                .bind("since", LocalDateTime.ofInstant(Instant.ofEpochMilli(sinceMillis), ZoneId.systemDefault()))
+                .map(row -> {
+                    LocalDateTime updateTime = row.get(1, LocalDateTime.class);
+                    return new AbstractMap.SimpleEntry<>(row.get(0, String.class),
+                            updateTime == null ? 0L : updateTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+                })
+                .all()
+                .collectMap(Map.Entry::getKey, Map.Entry::getValue)
+                .block(BLOCK_TIMEOUT);
+    }
+
+    @Override
+    public boolean existsTag(String bizTag) {
+        return Boolean.TRUE.equals(client.sql("SELECT biz_tag FROM " + TABLE + " WHERE biz_tag = :bizTag")
+                .bind("bizTag", bizTag)
+                .map(row -> row.get(0, String.class))
+                .first()
+                .hasElement()
+                .block(BLOCK_TIMEOUT));
+    }
+
+    @Override
+    public boolean createTag(String bizTag, long maxId, int step) {
+        return Boolean.TRUE.equals(client.sql("INSERT INTO " + TABLE + " (biz_tag, max_id, step) VALUES (:bizTag, :maxId, :step)")
+                .bind("bizTag", bizTag)
+                .bind("maxId", maxId)
+                .bind("step", step)
+                .fetch()
+                .rowsUpdated()
+                .map(rows -> rows > 0)
+                .onErrorReturn(DataIntegrityViolationException.class, false)
+                .block(BLOCK_TIMEOUT));
+    }
+
+    @Override
+    public boolean supportsCreateTag() {
+        return true;
+    }
+}
@@ -0,0 +1,57 @@
+package com.wenziyue.uid.segment;
+
+import com.wenziyue.uid.core.ReactiveIdGen;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.Arrays;
+
+/**
+ * Segment 模式的响应式发号：
+ * - 当前段有余量时直接在订阅方线程上完成（一次原子自增，不加锁、不访问数据库）；
+ * - 首段未加载、或当前段用完且下一段未就绪时，切换到 boundedElastic 线程走阻塞的 nextLongId，
+ *   由它完成首段加载或等待预加载，订阅方线程不会被阻塞。
+ * 批量发号可能直接访问数据库，始终在 boundedElastic 线程上执行
+ *
+ * @author wenziyue
+ */
+public class ReactiveSegmentIdGenerator implements ReactiveIdGen {
+
+    private final SegmentIdGeneratorImpl generator;
+
+    private final Scheduler scheduler;
+
+    public ReactiveSegmentIdGenerator(SegmentIdGeneratorImpl generator) {
+        this(generator, Schedulers.boundedElastic());
+    }
+
+    public ReactiveSegmentIdGenerator(SegmentIdGeneratorImpl generator, Scheduler scheduler) {
+        this.generator = generator;
+        this.scheduler = scheduler;
+    }
+
+    @Override
+    public Mono<Long> nextId() {
+        return nextId(generator.getDefaultBizTag());
+    }
+
+    @Override
+    public Mono<Long> nextId(String bizTag) {
+        return Mono.defer(() -> {
+            long id = generator.tryNextId(bizTag);
+            if (id != SegmentIdGeneratorImpl.NOT_READY) {
+                return Mono.just(id);
+            }
+            return Mono.fromCallable(() -> generator.nextLongId(bizTag)).subscribeOn(scheduler);
+        });
+    }
+
+    @Override
+    public Flux<Long> nextIds(String bizTag, int n) {
+        return Mono.fromCallable(() -> generator.nextIds(bizTag, n))
+                .subscribeOn(scheduler)
+                .flatMapMany(ids -> Flux.fromStream(Arrays.stream(ids).boxed()));
+    }
+}
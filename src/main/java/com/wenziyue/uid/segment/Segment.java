@@ -1,41 +1,74 @@
 package com.wenziyue.uid.segment;
 
-import lombok.Data;
+import lombok.Getter;
 
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * 表示一段号段：从 value 到 max（闭区间）
- * 提供线程安全的发号操作
+ * 表示一段号段：可发放的 ID 为 (max - step, max) 开区间
+ * 号段边界在创建后不再变化，通过 SegmentBuffer 中的 volatile 引用安全发布，
+ * 发号只需要对 value 做一次原子自增
  *
  * @author wenziyue
  */
-@Data
+@Getter
 public class Segment {
 
     /**
-     * 当前发号位置（初始为 start - 1）
-     * 每次调用 nextId() 时通过 getAndIncrement() 获取
+     * 当前发号位置（初始为 start）
+     * 每次调用 nextId() 时通过 incrementAndGet() 获取
      */
-    private final AtomicLong value = new AtomicLong(0);
+    private final AtomicLong value;
+
+    /**
+     * 本段起始发号位置，从数据库新申请的段为 max - step，从本地 checkpoint 恢复的段为上次停止时的位置
+     */
+    private final long start;
 
     /**
      * 当前段最大值（由数据库控制）
      */
-    private volatile long max;
+    private final long max;
 
     /**
      * 当前段步长（用于观察使用率或日志）
      */
-    private volatile int step;
+    private final int step;
 
     /**
      * 回指所属的 SegmentBuffer，用于后续扩展
      */
     private final SegmentBuffer buffer;
 
-    public Segment(SegmentBuffer buffer) {
+    public Segment(SegmentBuffer buffer, long max, int step) {
+        this(buffer, max, step, max - step);
+    }
+
+    /**
+     * 从指定位置开始发号的段，用于恢复上次未用完的号段，可发放的 ID 为 (start, max) 开区间
+     */
+    public Segment(SegmentBuffer buffer, long max, int step, long start) {
         this.buffer = buffer;
+        this.max = max;
+        this.step = step;
+        this.start = start;
+        this.value = new AtomicLong(start);
+    }
+
+    /**
+     * 返回本段已发放的 ID 个数（不超过 step - 1）
+     */
+    public long getIssued() {
+        return Math.max(0, Math.min(value.get(), max - 1) - start);
+    }
+
+    /**
+     * 关闭本段：把发号位置推到 max，此后在本段上的自增都会越界，不会再发出任何 ID
+     *
+     * @return 关闭前的发号位置，(返回值, max) 区间内的 ID 从未发放过
+     */
+    public long close() {
+        return Math.min(value.getAndSet(max), max);
     }
 
     /**
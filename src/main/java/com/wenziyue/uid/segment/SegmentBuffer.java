@@ -1,46 +1,63 @@
 package com.wenziyue.uid.segment;
 
-import lombok.Data;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
 
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * SegmentBuffer 是号段分配的核心调度结构
- * - 管理 current / next 两段
- * - 控制段切换
+ * - 管理 current 与若干预加载好的 ready 段（环形预取，默认只预取 1 段，即双 buffer）
+ * - 控制段切换（对 current 引用做 CAS，无锁）
  * - 控制异步加载状态
  *
  * @author wenziyue
  */
-@Data
+@Slf4j
+@Getter
 public class SegmentBuffer {
 
     /**
      * 业务标识
      */
-    private String key;
+    private final String key;
 
     /**
-     * 双 buffer：segments[0] 为 current，segments[1] 为 next
+     * 当前正在发号的 segment，首段加载完成前为 null
      */
-    private final Segment[] segments =  new Segment[2];
+    private final AtomicReference<Segment> current = new AtomicReference<>();
 
     /**
-     * 当前使用的 segment index（0 或 1）
+     * 预加载好的后续段，按申请顺序排列，加载成功后才会入队，切段时出队
      */
-    private volatile int currentPos;
+    private final Queue<Segment> ready = new ConcurrentLinkedQueue<>();
 
     /**
-     * 是否初始化完成
+     * ready 中段的个数，热路径只读这个计数，避免遍历队列
      */
-    private volatile boolean initOk;
+    private final AtomicInteger readyCount = new AtomicInteger(0);
 
     /**
-     * 下一段是否准备好了（如果 ready，可以切段）
+     * 应急号段，数据库正常时后台申请，只在加载下一段失败时才转入 ready
+     */
+    private final Queue<Segment> reserve = new ConcurrentLinkedQueue<>();
+
+    /**
+     * reserve 中段的个数
      */
-    private volatile boolean nextReady;
+    private final AtomicInteger reserveCount = new AtomicInteger(0);
+
+    /**
+     * 后台加载下一段连续失败的次数，加载成功后清零
+     */
+    private final AtomicInteger loadFailures = new AtomicInteger(0);
 
     /**
      * 是否有后台线程正在加载下一段
@@ -48,48 +65,259 @@ public class SegmentBuffer {
     private final AtomicBoolean threadRunning = new AtomicBoolean(false);
 
     /**
-     * 并发控制锁（可选：第二阶段可以先不使用）
+     * 运行统计，供监控读取
+     */
+    private final SegmentBufferStats stats = new SegmentBufferStats();
+
+    /**
+     * 等待下一段就绪时使用的锁与条件，加载任务装好段或结束时 signalAll
+     */
+    private final ReentrantLock waitLock = new ReentrantLock();
+    private final Condition nextReadyCondition = waitLock.newCondition();
+
+    /**
+     * 下次向数据库申请号段时使用的步长，开启动态步长后会随号段消耗速度调整
+     */
+    @Setter
+    private volatile int step;
+
+    /**
+     * 当前段开始发号的时间戳（毫秒）
+     */
+    private volatile long currentSince;
+
+    /**
+     * 上一个用完的段从开始发号到被切走的时长（毫秒），0 表示还没有段用完过
+     */
+    private volatile long lastSegmentDuration;
+
+    /**
+     * 上一个用完的段的步长
+     */
+    private volatile int lastSegmentStep;
+
+    /**
+     * 是否已被淘汰出缓存，被淘汰后持有旧引用的线程在切段时改用新的 buffer
      */
-    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private volatile boolean evicted;
 
-    public SegmentBuffer(String key) {
+    /**
+     * 最近一次观察到发号进度变化的时间戳（毫秒），只由淘汰任务更新，发号路径不记录访问时间
+     */
+    private volatile long lastActiveTime = System.currentTimeMillis();
+
+    /**
+     * 淘汰任务上一次观察到的累计发号数
+     */
+    private long lastIssuedSnapshot;
+
+    public SegmentBuffer(String key, int step) {
         this.key = key;
-        this.segments[0] = new Segment(this);
-        this.segments[1] = new Segment(this);
+        this.step = step;
     }
 
     // 常用操作
 
+    /**
+     * 是否初始化完成（首段已加载）
+     * @return boolean
+     */
+    public boolean isInitOk() {
+        return current.get() != null;
+    }
+
     /**
      * 获取当前使用的 Segment
      * @return Segment
      */
     public Segment getCurrent() {
-        return segments[currentPos];
+        return current.get();
     }
 
     /**
-     * 获取下一个 Segment
-     * @return Segment
+     * 设置当前段，仅用于首段加载
+     * @param segment Segment
+     */
+    public void setCurrent(Segment segment) {
+        currentSince = System.currentTimeMillis();
+        current.set(segment);
+    }
+
+    /**
+     * 获取最早预加载好的下一个 Segment
+     * @return Segment，未就绪时为 null
      */
     public Segment getNext() {
-        return segments[nextPos()];
+        return ready.peek();
     }
 
     /**
-     * 另一个 Segment 的 index
-     * @return index 0或1
+     * 发布加载好的下一段，排在已有 ready 段之后
+     * @param segment Segment
      */
-    public int nextPos() {
-        return (currentPos + 1) % 2;
+    public void addReady(Segment segment) {
+        ready.offer(segment);
+        readyCount.incrementAndGet();
     }
 
     /**
-     * 切换位置 currentPos
+     * 预加载好的段的个数
+     * @return int
      */
-    public void switchPos() {
-        currentPos = nextPos();
+    public int getReadyCount() {
+        return readyCount.get();
     }
 
+    /**
+     * 保存一个应急号段
+     * @param segment Segment
+     */
+    public void addReserve(Segment segment) {
+        reserve.offer(segment);
+        reserveCount.incrementAndGet();
+    }
+
+    /**
+     * 应急号段的个数
+     * @return int
+     */
+    public int getReserveCount() {
+        return reserveCount.get();
+    }
 
+    /**
+     * 取出一个应急号段放入 ready，供切段使用
+     * @return false 表示没有应急号段了
+     */
+    public boolean promoteReserve() {
+        Segment segment = reserve.poll();
+        if (segment == null) {
+            return false;
+        }
+        reserveCount.decrementAndGet();
+        addReady(segment);
+        stats.getReserveUsed().increment();
+        log.warn("[Segment UID] 加载下一段失败，启用应急号段，bizTag：{}，应急段：{}，剩余应急段数：{}", key, segment, reserveCount.get());
+        return true;
+    }
+
+    /**
+     * 下一段是否准备好了（如果 ready，可以切段）
+     * @return boolean
+     */
+    public boolean isNextReady() {
+        return readyCount.get() > 0;
+    }
+
+    /**
+     * 把已用完的 exhausted 切换为最早的 ready 段，只有 CAS 成功的线程会完成安装
+     *
+     * @param exhausted 调用方观察到的已用完的段
+     * @return true 表示 current 已不再是 exhausted（自己或其他线程完成了切换），false 表示下一段未就绪
+     */
+    public boolean switchToNext(Segment exhausted) {
+        if (current.get() != exhausted) {
+            return true;
+        }
+        Segment nextSegment = ready.peek();
+        if (nextSegment == null) {
+            return false;
+        }
+        if (nextSegment == exhausted) {
+            // 安装它的线程还没来得及出队，帮忙出队后重试
+            removeReady(nextSegment);
+            return true;
+        }
+        if (current.compareAndSet(exhausted, nextSegment)) {
+            removeReady(nextSegment);
+            long now = System.currentTimeMillis();
+            lastSegmentDuration = Math.max(1, now - currentSince);
+            lastSegmentStep = exhausted.getStep();
+            currentSince = now;
+            stats.getSwitches().increment();
+            stats.getCompletedIds().add(exhausted.getIssued());
+            log.info("[Segment UID] 切换号段完成，bizTag：{}，新段：{}", key, nextSegment);
+        }
+        return true;
+    }
+
+    /**
+     * 阻塞等待 exhausted 被切走或有 ready 段可用，后台没有加载任务或 buffer 已淘汰时立即返回
+     *
+     * @param exhausted    调用方观察到的已用完的段
+     * @param timeoutNanos 最长等待时间
+     * @return false 表示超时仍未就绪
+     * @throws InterruptedException 等待期间被中断
+     */
+    public boolean awaitNext(Segment exhausted, long timeoutNanos) throws InterruptedException {
+        long nanos = timeoutNanos;
+        waitLock.lock();
+        try {
+            while (current.get() == exhausted && readyCount.get() == 0 && threadRunning.get() && !evicted) {
+                if (nanos <= 0) {
+                    return false;
+                }
+                nanos = nextReadyCondition.awaitNanos(nanos);
+            }
+            return true;
+        } finally {
+            waitLock.unlock();
+        }
+    }
+
+    /**
+     * 唤醒所有等待下一段的线程，需在修改 ready / threadRunning 之后调用
+     */
+    public void signalWaiters() {
+        waitLock.lock();
+        try {
+            nextReadyCondition.signalAll();
+        } finally {
+            waitLock.unlock();
+        }
+    }
+
+    /**
+     * 累计发放的 ID 数：已用完号段的发放数 + 当前段进度
+     * @return long
+     */
+    public long getIssuedIds() {
+        Segment segment = current.get();
+        return stats.getCompletedIds().sum() + (segment == null ? 0 : segment.getIssued());
+    }
+
+    /**
+     * 比较累计发号数与上一次观察的快照，有变化则把最近活跃时间更新为 now。
+     * 只由淘汰任务单线程调用
+     *
+     * @param now 当前时间戳（毫秒）
+     * @return 最近活跃时间
+     */
+    long refreshLastActiveTime(long now) {
+        long issued = getIssuedIds();
+        if (issued != lastIssuedSnapshot) {
+            lastIssuedSnapshot = issued;
+            lastActiveTime = now;
+        }
+        return lastActiveTime;
+    }
+
+    /**
+     * 标记为已淘汰
+     */
+    void markEvicted() {
+        evicted = true;
+    }
+
+    private void removeReady(Segment segment) {
+        if (ready.remove(segment)) {
+            readyCount.decrementAndGet();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "SegmentBuffer{key=" + key + ", current=" + current.get() + ", ready=" + ready
+                + ", reserve=" + reserveCount.get() + ", step=" + step + ", threadRunning=" + threadRunning.get() + '}';
+    }
 }
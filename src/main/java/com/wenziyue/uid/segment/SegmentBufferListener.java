@@ -0,0 +1,20 @@
+package com.wenziyue.uid.segment;
+
+/**
+ * SegmentBuffer 生命周期回调
+ *
+ * @author wenziyue
+ */
+public interface SegmentBufferListener {
+
+    /**
+     * 新的 bizTag 加入缓存
+     */
+    void onCreated(SegmentBuffer buffer);
+
+    /**
+     * bizTag 从缓存中移除
+     */
+    default void onRemoved(SegmentBuffer buffer) {
+    }
+}
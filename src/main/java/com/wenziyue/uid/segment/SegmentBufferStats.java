@@ -0,0 +1,69 @@
+package com.wenziyue.uid.segment;
+
+import lombok.Getter;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * SegmentBuffer 的运行统计，只在切段、等待、访问数据库等冷路径上累加，
+ * 常规发号路径不做任何记录（已发放 ID 数由号段进度推算）
+ *
+ * @author wenziyue
+ */
+@Getter
+public class SegmentBufferStats {
+
+    /**
+     * 已用完的号段及批量直取号段发放的 ID 数
+     */
+    private final LongAdder completedIds = new LongAdder();
+
+    /**
+     * 切段次数
+     */
+    private final LongAdder switches = new LongAdder();
+
+    /**
+     * 当前段用完时下一段尚未就绪、需要等待的次数
+     */
+    private final LongAdder notReady = new LongAdder();
+
+    /**
+     * 等待后仍未就绪、返回 -3 的次数
+     */
+    private final LongAdder unavailable = new LongAdder();
+
+    /**
+     * 启用应急号段的次数
+     */
+    private final LongAdder reserveUsed = new LongAdder();
+
+    /**
+     * 访问数据库申请号段的次数
+     */
+    private final LongAdder fetchCount = new LongAdder();
+
+    /**
+     * 访问数据库申请号段的累计耗时（纳秒）
+     */
+    private final LongAdder fetchNanos = new LongAdder();
+
+    /**
+     * 访问数据库申请号段失败的次数
+     */
+    private final LongAdder fetchErrors = new LongAdder();
+
+    /**
+     * 记录一次数据库申请号段
+     *
+     * @param nanos   耗时
+     * @param success 是否成功
+     */
+    public void recordFetch(long nanos, boolean success) {
+        fetchCount.increment();
+        fetchNanos.add(nanos);
+        if (!success) {
+            fetchErrors.increment();
+        }
+    }
+}
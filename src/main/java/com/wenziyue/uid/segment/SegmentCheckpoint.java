@@ -0,0 +1,173 @@
+package com.wenziyue.uid.segment;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 号段本地 checkpoint：优雅停机时把每个 tag 未发放完的号段写入内存映射文件，下次启动直接从中继续发号，
+ * 重启不再浪费号段，号段用完前也不需要访问 leaf_alloc。
+ * <p>
+ * 文件头带有 clean 标记，只有完整写入并 force 之后才置为 1；启动读取后立即清零并 force，
+ * 因此进程崩溃（没有走优雅停机）后的文件不会被再次使用，同一份号段也不会被两个进程重复恢复。
+ * 读写期间对文件加排他锁，同一台机器上的多个进程共用一个文件时只有一个进程能恢复成功。
+ * <p>
+ * 文件格式：magic(int) version(int) clean(int) tagCount(int)，
+ * 之后每个 tag：tagLength(short) tag(UTF-8) rangeCount(int) [start(long) max(long) step(int)]*
+ *
+ * @author wenziyue
+ */
+@Slf4j
+public class SegmentCheckpoint {
+
+    private static final int MAGIC = 0x57554944;
+    private static final int VERSION = 1;
+    private static final int CLEAN_OFFSET = 8;
+    private static final int HEADER_SIZE = 16;
+    private static final int RANGE_SIZE = 8 + 8 + 4;
+
+    private final Path path;
+
+    public SegmentCheckpoint(Path path) {
+        this.path = path;
+    }
+
+    /**
+     * 读取上次优雅停机时保存的号段，并把文件标记为已使用
+     *
+     * @return tag -> 未用完的号段，文件不存在、未正常关闭或格式不对时返回空 Map
+     */
+    public Map<String, List<Range>> restore() {
+        if (!Files.exists(path)) {
+            return Collections.emptyMap();
+        }
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw");
+             FileChannel channel = file.getChannel()) {
+            FileLock lock = channel.lock();
+            try {
+                return read(channel);
+            } finally {
+                lock.release();
+            }
+        } catch (IOException | BufferUnderflowException e) {
+            log.warn("[Segment UID] 读取 checkpoint 失败，忽略：{}", path, e);
+            return Collections.emptyMap();
+        }
+    }
+
+    /**
+     * 保存未用完的号段，调用前这些号段必须已经关闭（不会再发号）
+     *
+     * @param ranges tag -> 未用完的号段
+     * @throws IOException 写入失败
+     */
+    public void save(Map<String, List<Range>> ranges) throws IOException {
+        long size = HEADER_SIZE;
+        Map<String, byte[]> tags = new LinkedHashMap<>();
+        for (Map.Entry<String, List<Range>> entry : ranges.entrySet()) {
+            byte[] tag = entry.getKey().getBytes(StandardCharsets.UTF_8);
+            tags.put(entry.getKey(), tag);
+            size += 2 + tag.length + 4 + (long) RANGE_SIZE * entry.getValue().size();
+        }
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw");
+             FileChannel channel = file.getChannel()) {
+            FileLock lock = channel.lock();
+            try {
+                write(channel, size, ranges, tags);
+            } finally {
+                lock.release();
+            }
+        }
+        log.info("[Segment UID] 已保存号段 checkpoint：{}", ranges);
+    }
+
+    /**
+     * 在持有文件锁时读取号段并清除 clean 标记
+     */
+    private Map<String, List<Range>> read(FileChannel channel) throws IOException {
+        if (channel.size() < HEADER_SIZE) {
+            return Collections.emptyMap();
+        }
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+        if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+            log.warn("[Segment UID] checkpoint 文件格式不匹配，忽略：{}", path);
+            return Collections.emptyMap();
+        }
+        if (buffer.getInt() != 1) {
+            log.warn("[Segment UID] checkpoint 文件未正常关闭或已被使用，忽略：{}", path);
+            return Collections.emptyMap();
+        }
+        // 先清除 clean 标记并落盘，再交给调用方发号，保证同一份号段最多被恢复一次
+        buffer.putInt(CLEAN_OFFSET, 0);
+        buffer.force();
+
+        Map<String, List<Range>> result = new LinkedHashMap<>();
+        int tagCount = buffer.getInt();
+        for (int i = 0; i < tagCount; i++) {
+            byte[] tag = new byte[buffer.getShort()];
+            buffer.get(tag);
+            int rangeCount = buffer.getInt();
+            List<Range> ranges = new ArrayList<>(rangeCount);
+            for (int j = 0; j < rangeCount; j++) {
+                ranges.add(new Range(buffer.getLong(), buffer.getLong(), buffer.getInt()));
+            }
+            result.put(new String(tag, StandardCharsets.UTF_8), ranges);
+        }
+        log.info("[Segment UID] 从 checkpoint 恢复号段：{}", result);
+        return result;
+    }
+
+    /**
+     * 在持有文件锁时写入号段，最后置 clean 标记
+     */
+    private void write(FileChannel channel, long size, Map<String, List<Range>> ranges, Map<String, byte[]> tags) throws IOException {
+        channel.truncate(size);
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(0).putInt(ranges.size());
+        for (Map.Entry<String, List<Range>> entry : ranges.entrySet()) {
+            byte[] tag = tags.get(entry.getKey());
+            buffer.putShort((short) tag.length).put(tag).putInt(entry.getValue().size());
+            for (Range range : entry.getValue()) {
+                buffer.putLong(range.getStart()).putLong(range.getMax()).putInt(range.getStep());
+            }
+        }
+        // 内容完整落盘之后才置 clean 标记，写到一半崩溃的文件不会被恢复
+        buffer.force();
+        buffer.putInt(CLEAN_OFFSET, 1);
+        buffer.force();
+    }
+
+    /**
+     * 一段未发放的号段，可发放的 ID 为 (start, max) 开区间，step 为申请时的步长
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class Range {
+        private final long start;
+        private final long max;
+        private final int step;
+
+        @Override
+        public String toString() {
+            return "(" + start + ", " + max + ")";
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package com.wenziyue.uid.segment;
+
+import com.wenziyue.uid.properties.UidGeneratorProperties;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 后台预加载号段的熔断，按 tag 独立统计：
+ * 一个 tag 在 window 时间窗内预加载至少 minimumCalls 次且失败率达到 failureRateThreshold 时熔断，
+ * 熔断期间该 tag 的预加载直接按失败处理（可启用应急号段）而不访问数据库，其他 tag 不受影响；
+ * 熔断时长从 initialBackoff 开始每次试探失败翻倍，最长 maxBackoff，到期后只放行一个试探请求，成功则恢复。
+ * 首段加载与 nextIds 的专用区间由调用线程同步申请，不经过熔断
+ *
+ * @author wenziyue
+ */
+@Slf4j
+public class SegmentCircuitBreaker {
+
+    private final UidGeneratorProperties.CircuitBreaker config;
+
+    private final Map<String, TagState> states = new ConcurrentHashMap<>();
+
+    public SegmentCircuitBreaker(UidGeneratorProperties.CircuitBreaker config) {
+        this.config = config;
+    }
+
+    /**
+     * 是否允许为 tag 发起一次预加载，返回 true 时调用方必须随后调用 onSuccess 或 onFailure
+     *
+     * @param bizTag 业务标签
+     * @return false 表示熔断中
+     */
+    public boolean tryAcquire(String bizTag) {
+        return state(bizTag).tryAcquire(System.currentTimeMillis());
+    }
+
+    public void onSuccess(String bizTag) {
+        state(bizTag).onSuccess(System.currentTimeMillis());
+    }
+
+    public void onFailure(String bizTag) {
+        state(bizTag).onFailure(System.currentTimeMillis());
+    }
+
+    /**
+     * tag 是否处于熔断状态
+     *
+     * @param bizTag 业务标签
+     * @return boolean
+     */
+    public boolean isOpen(String bizTag) {
+        TagState state = states.get(bizTag);
+        return state != null && state.isOpen();
+    }
+
+    /**
+     * tag 被淘汰时丢弃它的统计
+     *
+     * @param bizTag 业务标签
+     */
+    public void remove(String bizTag) {
+        states.remove(bizTag);
+    }
+
+    private TagState state(String bizTag) {
+        return states.computeIfAbsent(bizTag, TagState::new);
+    }
+
+    /**
+     * 单个 tag 的固定时间窗统计与熔断状态，预加载频率很低，直接加锁
+     */
+    private final class TagState {
+
+        private final String bizTag;
+
+        private long windowStart;
+
+        private int calls;
+
+        private int failures;
+
+        /**
+         * 熔断到期时间（毫秒），0 表示未熔断
+         */
+        private long openUntil;
+
+        private long backoff = config.getInitialBackoff().toMillis();
+
+        /**
+         * 是否有试探请求正在进行
+         */
+        private boolean probing;
+
+        private TagState(String bizTag) {
+            this.bizTag = bizTag;
+        }
+
+        synchronized boolean tryAcquire(long now) {
+            if (openUntil == 0) {
+                return true;
+            }
+            if (now < openUntil || probing) {
+                return false;
+            }
+            probing = true;
+            return true;
+        }
+
+        synchronized void onSuccess(long now) {
+            if (probing) {
+                probing = false;
+                openUntil = 0;
+                backoff = config.getInitialBackoff().toMillis();
+                resetWindow(now);
+                log.info("[Segment UID] bizTag={} 预加载恢复，关闭熔断", bizTag);
+                return;
+            }
+            record(now, false);
+        }
+
+        synchronized void onFailure(long now) {
+            if (probing) {
+                // 试探失败，熔断时长翻倍
+                probing = false;
+                backoff = Math.min(backoff * 2, config.getMaxBackoff().toMillis());
+                openUntil = now + backoff;
+                log.warn("[Segment UID] bizTag={} 预加载试探失败，继续熔断 {}ms", bizTag, backoff);
+                return;
+            }
+            record(now, true);
+            if (openUntil == 0 && calls >= config.getMinimumCalls()
+                    && failures * 100L >= (long) config.getFailureRateThreshold() * calls) {
+                openUntil = now + backoff;
+                log.warn("[Segment UID] bizTag={} 预加载 {}ms 内失败 {}/{} 次，熔断 {}ms",
+                        bizTag, config.getWindow().toMillis(), failures, calls, backoff);
+                resetWindow(now);
+            }
+        }
+
+        synchronized boolean isOpen() {
+            return openUntil != 0;
+        }
+
+        private void record(long now, boolean failure) {
+            if (now - windowStart >= config.getWindow().toMillis()) {
+                resetWindow(now);
+            }
+            calls++;
+            if (failure) {
+                failures++;
+            }
+        }
+
+        private void resetWindow(long now) {
+            windowStart = now;
+            calls = 0;
+            failures = 0;
+        }
+    }
+}
@@ -1,6 +1,8 @@
 package com.wenziyue.uid.segment;
 
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * 访问 leaf_alloc 表的接口
@@ -15,5 +17,120 @@ public interface SegmentIdDao {
      */
     long nextMaxId(String bizTag, int step);
 
+    /**
+     * 带下限申请号段：新的 max_id 为 max(max_id, floor) + step，用于按时间有序的 ID。
+     * floor 小于等于 0 时与 nextMaxId(bizTag, step) 相同。
+     * 下限与当前 max_id 可能相差远超 int 步长，无法用 nextMaxId(bizTag, step) 模拟，默认实现不支持 floor 大于 0；
+     * 覆盖本方法的实现类需同时让 supportsFloor() 返回 true，发号器开启 timeOrdered 时在启动阶段检查
+     *
+     * @param bizTag 业务标签
+     * @param step   步长
+     * @param floor  max_id 的下限
+     * @return 新的 max_id
+     */
+    default long nextMaxId(String bizTag, int step, long floor) {
+        if (floor <= 0) {
+            return nextMaxId(bizTag, step);
+        }
+        throw new UnsupportedOperationException(getClass().getName() + " 不支持带下限申请号段");
+    }
+
+    /**
+     * 是否支持 floor 大于 0 的 nextMaxId(bizTag, step, floor)，不支持时不能开启 timeOrdered
+     *
+     * @return boolean
+     */
+    default boolean supportsFloor() {
+        return false;
+    }
+
+    /**
+     * 申请一段一次性的专用区间 (max_id - count, max_id]，用于超过一个步长的批量取号：
+     * 只推进 max_id，不把 count 写入 step 列，step 列仍是发号器正常使用的步长（动态步长会持久化到这里）。
+     * 默认实现调用 nextMaxId(bizTag, count, floor)，会把 count 写入 step 列；实现类应覆盖为只更新 max_id
+     *
+     * @param bizTag 业务标签
+     * @param count  区间长度
+     * @param floor  max_id 的下限，含义与 nextMaxId(bizTag, step, floor) 相同
+     * @return 新的 max_id
+     */
+    default long allocateRange(String bizTag, int count, long floor) {
+        return nextMaxId(bizTag, count, floor);
+    }
+
+    /**
+     * 一次为多个 tag 申请号段，用于合并多个 buffer 的预加载请求。
+     * 默认逐个调用 nextMaxId，实现类可覆盖为一次数据库往返
+     *
+     * @param steps bizTag -> 步长
+     * @return bizTag -> 新的 max_id，包含 steps 中的全部 tag
+     */
+    default Map<String, Long> nextMaxIds(Map<String, Integer> steps) {
+        Map<String, Long> maxIds = new LinkedHashMap<>();
+        steps.forEach((bizTag, step) -> maxIds.put(bizTag, nextMaxId(bizTag, step)));
+        return maxIds;
+    }
+
+    /**
+     * 带下限的批量申请，floor 对每个 tag 生效。默认逐个调用 nextMaxId(bizTag, step, floor)
+     *
+     * @param steps bizTag -> 步长
+     * @param floor max_id 的下限
+     * @return bizTag -> 新的 max_id
+     */
+    default Map<String, Long> nextMaxIds(Map<String, Integer> steps, long floor) {
+        if (floor <= 0) {
+            return nextMaxIds(steps);
+        }
+        Map<String, Long> maxIds = new LinkedHashMap<>();
+        steps.forEach((bizTag, step) -> maxIds.put(bizTag, nextMaxId(bizTag, step, floor)));
+        return maxIds;
+    }
+
     List<String> getAllTags();
+
+    /**
+     * 增量获取 update_time 不早于 sinceMillis 的 tag，用于定时刷新 tag 列表。
+     * 默认不支持增量：返回全部 tag，时间均为 0（每次刷新都是全量）
+     *
+     * @param sinceMillis 水位（毫秒时间戳，数据库时间），0 表示全部
+     * @return bizTag -> update_time（毫秒）
+     */
+    default Map<String, Long> getTagsUpdatedSince(long sinceMillis) {
+        Map<String, Long> tags = new LinkedHashMap<>();
+        getAllTags().forEach(tag -> tags.put(tag, 0L));
+        return tags;
+    }
+
+    /**
+     * tag 是否存在于 leaf_alloc 中，用于首次使用尚未刷新到本地的 tag
+     *
+     * @param bizTag 业务标签
+     * @return boolean
+     */
+    default boolean existsTag(String bizTag) {
+        return getAllTags().contains(bizTag);
+    }
+
+    /**
+     * 以指定的 max_id 插入一行 tag，行已存在时不做任何修改，用于创建分片行
+     *
+     * @param bizTag 业务标签
+     * @param maxId  初始 max_id
+     * @param step   写入 step 列的步长
+     * @return false 表示行已存在（例如被其他节点抢先创建）
+     */
+    default boolean createTag(String bizTag, long maxId, int step) {
+        throw new UnsupportedOperationException(getClass().getName() + " 不支持 createTag");
+    }
+
+    /**
+     * 是否支持 createTag。指定起点插入行无法用 existsTag + nextMaxId 安全地模拟（并发创建时会重复推进 max_id），
+     * 依赖它的分片模式在创建 ShardedSegmentIdDao 时检查，不支持时启动失败
+     *
+     * @return boolean
+     */
+    default boolean supportsCreateTag() {
+        return false;
+    }
 }
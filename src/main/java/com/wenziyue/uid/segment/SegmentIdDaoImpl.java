@@ -1,44 +1,185 @@
 package com.wenziyue.uid.segment;
 
-import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
 
 /**
+ * 按数据库方言申请号段：每次拉号段都在独立的新事务中完成（REQUIRES_NEW），
+ * 既不会被业务事务回滚导致号段重复，也不会让 leaf_alloc 的行锁跟着业务事务一起持有
+ *
  * @author wenziyue
  */
+@Slf4j
 @Repository
-@RequiredArgsConstructor
 public class SegmentIdDaoImpl implements SegmentIdDao{
 
     private final JdbcTemplate jdbc;
 
+    private final TransactionTemplate transactionTemplate;
+
+    /**
+     * 为 null 时在第一次访问数据库时根据产品名自动识别
+     */
+    private volatile SegmentSqlDialect dialect;
+
     /** 固定表名，不再做配置 */
     private static final String TABLE = "leaf_alloc";
 
-    /** 拉号段：update max_id，并返回新的 max_id */
+    public SegmentIdDaoImpl(JdbcTemplate jdbc) {
+        this(jdbc, null);
+    }
+
+    public SegmentIdDaoImpl(JdbcTemplate jdbc, SegmentSqlDialect dialect) {
+        this.jdbc = jdbc;
+        this.dialect = dialect;
+        this.transactionTemplate = new TransactionTemplate(
+                new DataSourceTransactionManager(Objects.requireNonNull(jdbc.getDataSource(), "JdbcTemplate 未设置 DataSource")));
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    /** 拉号段：一条原子语句 update max_id 并拿到新的 max_id */
+    @Override
     public long nextMaxId(String bizTag, int step) {
-        int updated = jdbc.update(
-                "UPDATE " + TABLE + " SET max_id = max_id + ?, step = ? WHERE biz_tag = ?",
-                step, step, bizTag
-        );
-        if (updated == 0) {           // 业务第一次使用，插一行
-            jdbc.update(
-                    "INSERT INTO " + TABLE + " (biz_tag, max_id, step) VALUES (?, ?, ?)",
-                    bizTag, step, step
-            );
+        return nextMaxId(bizTag, step, 0);
+    }
+
+    @Override
+    public long nextMaxId(String bizTag, int step, long floor) {
+        try {
+            Long maxId = transactionTemplate.execute(status -> jdbc.execute((ConnectionCallback<Long>) con -> {
+                Long updated = getDialect(con).updateMaxId(con, TABLE, bizTag, step, floor);
+                if (updated != null) {
+                    return updated;
+                }
+                // 业务第一次使用，插一行
+                return insert(bizTag, step, floor);
+            }));
+            return Objects.requireNonNull(maxId);
+        } catch (DuplicateKeyException e) {
+            // 其他节点抢先插入了这一行，重新走一次 UPDATE 即可
+            log.info("[Segment UID] bizTag={} 已被其他节点初始化，重新申请号段", bizTag);
+            return nextMaxId(bizTag, step, floor);
+        }
+    }
+
+    @Override
+    public boolean supportsFloor() {
+        return true;
+    }
+
+    /**
+     * 批量取号的专用区间只推进 max_id，不改写 step 列；行不存在时按普通号段插入
+     */
+    @Override
+    public long allocateRange(String bizTag, int count, long floor) {
+        Long maxId = transactionTemplate.execute(status -> jdbc.execute((ConnectionCallback<Long>) con ->
+                getDialect(con).updateMaxId(con, TABLE, bizTag, count, floor, false)));
+        return maxId != null ? maxId : nextMaxId(bizTag, count, floor);
+    }
+
+    /**
+     * 批量拉号段：在同一个新事务、同一个连接上依次更新各 tag，一次获取连接、一次提交。
+     * 按 bizTag 排序加行锁，避免多个节点同时批量申请时互相死锁
+     */
+    @Override
+    public Map<String, Long> nextMaxIds(Map<String, Integer> steps) {
+        return nextMaxIds(steps, 0);
+    }
+
+    @Override
+    public Map<String, Long> nextMaxIds(Map<String, Integer> steps, long floor) {
+        try {
+            Map<String, Long> maxIds = transactionTemplate.execute(status -> jdbc.execute((ConnectionCallback<Map<String, Long>>) con -> {
+                SegmentSqlDialect current = getDialect(con);
+                Map<String, Long> result = new HashMap<>();
+                for (Map.Entry<String, Integer> entry : new TreeMap<>(steps).entrySet()) {
+                    String bizTag = entry.getKey();
+                    int step = entry.getValue();
+                    Long updated = current.updateMaxId(con, TABLE, bizTag, step, floor);
+                    if (updated == null) {
+                        updated = insert(bizTag, step, floor);
+                    }
+                    result.put(bizTag, updated);
+                }
+                return result;
+            }));
+            return Objects.requireNonNull(maxIds);
+        } catch (DuplicateKeyException e) {
+            // 整个事务已回滚，重新申请一次
+            log.info("[Segment UID] 批量申请号段时有 bizTag 已被其他节点初始化，重新申请：{}", steps.keySet());
+            return nextMaxIds(steps, floor);
         }
-        return jdbc.queryForObject(
-                "SELECT max_id FROM " + TABLE + " WHERE biz_tag = ?",
-                Long.class,
-                bizTag
-        );
     }
 
     @Override
     public List<String> getAllTags() {
         return jdbc.queryForList("SELECT biz_tag FROM " + TABLE, String.class);
     }
+
+    @Override
+    public Map<String, Long> getTagsUpdatedSince(long sinceMillis) {
+        Map<String, Long> tags = new HashMap<>();
+        jdbc.query("SELECT biz_tag, update_time FROM " + TABLE + " WHERE update_time >= ?",
+                rs -> {
+                    Timestamp updateTime = rs.getTimestamp(2);
+                    tags.put(rs.getString(1), updateTime == null ? 0L : updateTime.getTime());
+                },
+                new Timestamp(sinceMillis));
+        return tags;
+    }
+
+    @Override
+    public boolean existsTag(String bizTag) {
+        Integer count = jdbc.queryForObject("SELECT COUNT(1) FROM " + TABLE + " WHERE biz_tag = ?", Integer.class, bizTag);
+        return count != null && count > 0;
+    }
+
+    @Override
+    public boolean createTag(String bizTag, long maxId, int step) {
+        try {
+            jdbc.update("INSERT INTO " + TABLE + " (biz_tag, max_id, step) VALUES (?, ?, ?)", bizTag, maxId, step);
+            return true;
+        } catch (DuplicateKeyException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public boolean supportsCreateTag() {
+        return true;
+    }
+
+    /**
+     * 插入 tag 的第一行，max_id 为 max(floor, 0) + step
+     */
+    private long insert(String bizTag, int step, long floor) {
+        long maxId = Math.max(floor, 0) + step;
+        jdbc.update("INSERT INTO " + TABLE + " (biz_tag, max_id, step) VALUES (?, ?, ?)", bizTag, maxId, step);
+        return maxId;
+    }
+
+    private SegmentSqlDialect getDialect(Connection con) throws SQLException {
+        SegmentSqlDialect current = dialect;
+        if (current == null) {
+            current = SegmentSqlDialect.fromProductName(con.getMetaData().getDatabaseProductName());
+            dialect = current;
+            log.info("[Segment UID] 识别到数据库方言：{}", current);
+        }
+        return current;
+    }
 }
@@ -1,6 +1,7 @@
 package com.wenziyue.uid.segment;
 
 
+import com.wenziyue.uid.common.IdGenException;
 import com.wenziyue.uid.common.Result;
 import com.wenziyue.uid.common.Status;
 import com.wenziyue.uid.core.IdGen;
@@ -12,17 +13,21 @@ import org.springframework.boot.context.event.ApplicationReadyEvent;
 import org.springframework.context.event.EventListener;
 import org.springframework.core.Ordered;
 import org.springframework.core.annotation.Order;
-import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
 
 /**
- * 	1.	初始化并维护一个 SegmentBuffer；
- * 	2.	实现 nextId() 方法支持高并发发号；
- * 	3.	在段即将用尽时异步加载下一段；
+ * 	1.	初始化并维护每个 bizTag 对应的 SegmentBuffer；
+ * 	2.	实现 nextId() / nextId(bizTag) 方法支持高并发发号；
+ * 	3.	在段即将用尽时异步加载后续号段（默认预取 1 段，可配置为多段环形预取）；
  * 	4.	在段用尽后自动切换；
  * 	5.	确保线程安全、行为正确。
  *
@@ -36,26 +41,80 @@ public class SegmentIdGeneratorImpl implements IdGen {
     private final UidGeneratorProperties properties;
     private final SegmentIdDao dao;
     @Qualifier("segmentUidTaskExecutor")
-    private final ThreadPoolTaskExecutor taskExecutor;
+    private final Executor taskExecutor;
     private final ScheduledExecutorService segmentUidScheduler;
 
+    /**
+     * 后台预加载的熔断，未开启时为 null
+     */
+    private final SegmentCircuitBreaker circuitBreaker;
+
     public SegmentIdGeneratorImpl(
             UidGeneratorProperties properties,
             SegmentIdDao dao,
-            @Qualifier("segmentUidTaskExecutor") ThreadPoolTaskExecutor taskExecutor,
+            @Qualifier("segmentUidTaskExecutor") Executor taskExecutor,
             ScheduledExecutorService segmentUidScheduler
     ) {
         this.properties = properties;
         this.dao = dao;
         this.taskExecutor = taskExecutor;
         this.segmentUidScheduler = segmentUidScheduler;
+        this.circuitBreaker = properties.getCircuitBreaker().isEnabled()
+                ? new SegmentCircuitBreaker(properties.getCircuitBreaker()) : null;
     }
 
+    /**
+     * SegmentBuffer 创建 / 移除时的回调，例如注册监控指标
+     */
+    private final List<SegmentBufferListener> bufferListeners = new CopyOnWriteArrayList<>();
+
     /**
      * 用来判断是否初始化成功
      */
     private final AtomicBoolean  initOk = new AtomicBoolean(false);
 
+    /**
+     * 停机时是否已经关闭号段并写入 checkpoint
+     */
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+
+    /**
+     * 增量刷新 tag 的水位（数据库 update_time，毫秒），0 表示下次全量
+     */
+    private volatile long tagWatermark = 0;
+
+    /**
+     * 已确认在 leaf_alloc 中不存在的 tag，每次刷新 tag 列表时清空
+     */
+    private final Map<String, Boolean> missingTags = new ConcurrentHashMap<>();
+
+    /**
+     * 等待合并加载的 buffer，以及是否已经安排了一次 flush
+     */
+    private final Queue<SegmentBuffer> pendingPrefetch = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean prefetchFlushScheduled = new AtomicBoolean(false);
+
+    /**
+     * 被淘汰 tag 未发放的号段区间，tag 再次使用时优先从中发号；按淘汰顺序最多保留 eviction.maxTags 个 tag
+     */
+    private final Map<String, List<SegmentCheckpoint.Range>> evictedRanges = Collections.synchronizedMap(
+            new LinkedHashMap<String, List<SegmentCheckpoint.Range>>() {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, List<SegmentCheckpoint.Range>> eldest) {
+                    return size() > properties.getEviction().getMaxTags();
+                }
+            });
+
+    /**
+     * 累计淘汰的 tag 数
+     */
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * 开启 threadChunkSize 时每个线程为各 tag 领取的小段
+     */
+    private final ThreadLocal<Map<String, IdChunk>> threadChunks = ThreadLocal.withInitial(HashMap::new);
+
     /**
      * IDCache未初始化成功时的异常码
      */
@@ -69,6 +128,21 @@ public class SegmentIdGeneratorImpl implements IdGen {
      */
     private static final long EXCEPTION_ID_TWO_SEGMENTS_ARE_NULL = -3;
 
+    /**
+     * 增量刷新 tag 时水位回退的重叠时间
+     */
+    private static final long TAG_REFRESH_OVERLAP_MILLIS = 60_000;
+
+    /**
+     * 已确认不存在的 tag 最多缓存的个数，超过后清空，防止大量随机 tag 撑爆内存
+     */
+    private static final int MAX_MISSING_TAGS = 10_000;
+
+    /**
+     * tryNextId 无法立即发号时的返回值，号段发放的 ID 始终大于 0
+     */
+    public static final long NOT_READY = 0;
+
 
 
     /**
@@ -80,17 +154,285 @@ public class SegmentIdGeneratorImpl implements IdGen {
         if (!initOk.get()) {
             this.init();
         }
+        warmUp();
     }
 
     /**
-     * 从 SegmentBuffer 中获取一个唯一 ID。
-     * - 优先从当前号段中获取；
+     * 启动预热：并行为配置的（或全部）tag 装好当前段与预加载段，避免部署后每个 tag 的首个请求同步访问数据库。
+     * 在 ApplicationReadyEvent 中同步执行，预热结束（或超时）之前服务不会进入 ready 状态；
+     * 单个 tag 预热失败或超时只打印日志，该 tag 退回到首次请求时加载
+     */
+    private void warmUp() {
+        val warmup = properties.getWarmup();
+        if (!warmup.isEnabled()) {
+            return;
+        }
+        Collection<String> tags = warmup.getTags().isEmpty() ? new ArrayList<>(cache.keySet()) : warmup.getTags();
+        if (tags.isEmpty()) {
+            return;
+        }
+        val begin = System.currentTimeMillis();
+        val executor = Executors.newFixedThreadPool(Math.min(tags.size(), warmup.getParallelism()), r -> {
+            Thread thread = new Thread(r, "segment-warmup");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            val futures = new ArrayList<Future<?>>(tags.size());
+            tags.forEach(tag -> futures.add(executor.submit(() -> warmUp(tag))));
+            val deadline = System.nanoTime() + warmup.getTimeout().toNanos();
+            int warmed = 0;
+            for (Future<?> future : futures) {
+                try {
+                    future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                    warmed++;
+                } catch (TimeoutException e) {
+                    log.warn("[Segment UID] 预热超时（{}ms），未完成的 tag 将在首次请求时加载", warmup.getTimeout().toMillis());
+                    break;
+                } catch (ExecutionException e) {
+                    log.warn("[Segment UID] 预热失败", e.getCause());
+                }
+            }
+            log.info("[Segment UID] 预热完成 {}/{} 个 tag，耗时 {}ms", warmed, tags.size(), System.currentTimeMillis() - begin);
+        } catch (InterruptedException e) {
+            log.warn("[Segment UID] 预热被中断");
+            Thread.currentThread().interrupt();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * 预热单个 tag：同步装载当前段，并把预加载段补齐到预取深度
+     *
+     * @param bizTag 业务标签
+     */
+    private void warmUp(String bizTag) {
+        val buffer = getBuffer(bizTag);
+        // 与异步预加载共用 threadRunning，已有加载任务在跑时不重复加载
+        if (!buffer.getThreadRunning().compareAndSet(false, true)) {
+            return;
+        }
+        prepareNextSegments(Collections.singletonList(buffer));
+    }
+
+    /**
+     * 获取默认业务标签的下一个 ID
+     */
+    @Override
+    public Result nextId() {
+        return nextId(properties.getBizTag());
+    }
+
+    /**
+     * 从 bizTag 对应的 SegmentBuffer 中获取一个唯一 ID，封装为 Result，失败时返回异常码
+     */
+    @Override
+    public Result nextId(String bizTag) {
+        try {
+            return new Result(nextLongId(bizTag), Status.SUCCESS);
+        } catch (IdGenException e) {
+            return new Result(e.getCode(), Status.EXCEPTION);
+        }
+    }
+
+    /**
+     * 获取默认业务标签的下一个 ID，成功路径不创建任何对象
+     */
+    @Override
+    public long nextLongId() {
+        return nextLongId(properties.getBizTag());
+    }
+
+    /**
+     * 从 bizTag 对应的 SegmentBuffer 中获取一个唯一 ID。
+     * - 每个 tag 对应独立的 SegmentBuffer（双段 + 独立的异步预加载）；
+     * - 查找 SegmentBuffer 走 ConcurrentHashMap.get，不加锁；
+     * - 优先从当前号段中获取，成功路径只有一次原子自增，不创建任何对象；
+     *   开启 threadChunkSize 时改为从线程领取的小段中发号，见 nextChunkedId；
      * - 如果当前段快用完，异步加载下一个段；
      * - 如果当前段已用完，尝试切换到下一个段；
-     * - 如果两个段都不可用，返回异常。
+     * - 如果两个段都不可用，抛出异常。
+     *
+     * @throws IdGenException 初始化失败（-1）、tag 不存在（-2）、号段均未就绪或首段加载失败（-3）
      */
     @Override
-    public Result nextId() {
+    public long nextLongId(String bizTag) {
+        if (properties.getThreadChunkSize() > 0) {
+            return nextChunkedId(bizTag);
+        }
+        SegmentBuffer buffer = getBuffer(bizTag);
+        while (true) {
+            val segment = buffer.getCurrent();
+            val id = segment.getValue().incrementAndGet();
+            if (id < segment.getMax()) {
+                prepareNextSegmentIfNeeded(buffer, segment, id);
+                return id;
+            }
+            if (buffer.isEvicted()) {
+                // buffer 已被淘汰（号段均已关闭），改用缓存中新的 buffer
+                buffer = getBuffer(bizTag);
+                continue;
+            }
+
+            // 当id超过当前segment的最大值，那么切换到下一个段
+            if (!switchToNextSegment(buffer, segment)) {
+                throw new IdGenException(EXCEPTION_ID_TWO_SEGMENTS_ARE_NULL, "bizTag " + bizTag + " 的两个号段均未就绪");
+            }
+        }
+    }
+
+    /**
+     * 从当前线程领取的小段中发号，小段用完时用一次 getAndAdd 从当前段再领取 threadChunkSize 个。
+     * 成功路径只读写线程私有的字段，不访问任何共享变量
+     *
+     * @param bizTag 业务标签
+     * @return ID
+     */
+    private long nextChunkedId(String bizTag) {
+        val chunks = threadChunks.get();
+        IdChunk chunk = chunks.get(bizTag);
+        if (chunk != null && chunk.next < chunk.limit) {
+            return chunk.next++;
+        }
+        if (chunk == null) {
+            chunk = new IdChunk();
+            chunks.put(bizTag, chunk);
+        }
+        claimChunk(bizTag, chunk);
+        return chunk.next++;
+    }
+
+    /**
+     * 从当前段领取一个小段：一次原子加法预留 (start, start + size]，超出 max 的部分作废，
+     * 当前段剩余不足 size 时只领取剩余部分。已领取的 ID 在号段看来都已发放，关闭号段时不会被记录为未发放
+     *
+     * @param bizTag 业务标签
+     * @param chunk  当前线程的小段
+     */
+    private void claimChunk(String bizTag, IdChunk chunk) {
+        SegmentBuffer buffer = getBuffer(bizTag);
+        val size = properties.getThreadChunkSize();
+        while (true) {
+            val segment = buffer.getCurrent();
+            val start = segment.getValue().getAndAdd(size);
+            val available = segment.getMax() - 1 - start;
+            if (available > 0) {
+                val got = Math.min(size, available);
+                chunk.next = start + 1;
+                chunk.limit = start + got + 1;
+                prepareNextSegmentIfNeeded(buffer, segment, start + got);
+                return;
+            }
+            if (buffer.isEvicted()) {
+                buffer = getBuffer(bizTag);
+                continue;
+            }
+            if (!switchToNextSegment(buffer, segment)) {
+                throw new IdGenException(EXCEPTION_ID_TWO_SEGMENTS_ARE_NULL, "bizTag " + bizTag + " 的两个号段均未就绪");
+            }
+        }
+    }
+
+    /**
+     * 不阻塞地尝试发号：只在首段已加载、且当前段有余量或下一段已就绪时发号，
+     * 不会同步访问数据库，也不会等待预加载，供响应式调用方在事件循环线程上使用
+     *
+     * @param bizTag 业务标签
+     * @return ID，需要阻塞才能发号（未初始化、tag 不存在、首段未加载、下一段未就绪）时返回 NOT_READY
+     */
+    public long tryNextId(String bizTag) {
+        if (!initOk.get()) {
+            return NOT_READY;
+        }
+        val buffer = cache.get(bizTag);
+        if (buffer == null || !buffer.isInitOk()) {
+            return NOT_READY;
+        }
+        while (true) {
+            val segment = buffer.getCurrent();
+            val id = segment.getValue().incrementAndGet();
+            if (id < segment.getMax()) {
+                prepareNextSegmentIfNeeded(buffer, segment, id);
+                return id;
+            }
+            if (buffer.isEvicted() || !buffer.switchToNext(segment)) {
+                return NOT_READY;
+            }
+        }
+    }
+
+    /**
+     * 批量获取 n 个 ID，不会为每个 ID 创建 Result。
+     * - 在当前段上用一次 getAndAdd 预留连续的一批 ID；
+     * - 当前段剩余不足时，剩余部分小于等于一个步长则切换到下一段继续取，
+     *   大于一个步长则直接从数据库申请一段专用号段，避免反复切段；
+     * - 失败时抛出 IdGenException，异常码与 nextId 一致。
+     *
+     * @param bizTag 业务标签
+     * @param n      需要的 ID 个数
+     * @return 按分配顺序排列的 ID，跨段时不保证连续
+     */
+    @Override
+    public long[] nextIds(String bizTag, int n) {
+        if (n <= 0) {
+            throw new IllegalArgumentException("n 必须大于 0");
+        }
+        SegmentBuffer buffer = getBuffer(bizTag);
+        val ids = new long[n];
+        int filled = 0;
+
+        while (true) {
+            val segment = buffer.getCurrent();
+            val want = n - filled;
+            // 一次原子加法预留 (start, start + want] 这一批 ID，超出 max 的部分作废
+            val start = segment.getValue().getAndAdd(want);
+            val available = segment.getMax() - 1 - start;
+            if (available > 0) {
+                val got = (int) Math.min(want, available);
+                for (int i = 1; i <= got; i++) {
+                    ids[filled++] = start + i;
+                }
+                prepareNextSegmentIfNeeded(buffer, segment, start + got);
+                if (filled == n) {
+                    return ids;
+                }
+            }
+
+            val remaining = n - filled;
+            // 分片 tag 只能按块申请，剩余部分始终通过切段获取
+            if (remaining > buffer.getStep() && !properties.getSharding().getTags().contains(bizTag)) {
+                // 剩余数量超过一个步长，直接向数据库申请专用号段 (maxId - remaining, maxId]
+                long maxId;
+                try {
+                    maxId = fetchRange(buffer, remaining);
+                } catch (RuntimeException e) {
+                    throw new IdGenException(EXCEPTION_ID_TWO_SEGMENTS_ARE_NULL, "bizTag " + bizTag + " 申请批量号段失败", e);
+                }
+                for (long id = maxId - remaining + 1; id <= maxId; id++) {
+                    ids[filled++] = id;
+                }
+                buffer.getStats().getCompletedIds().add(remaining);
+                return ids;
+            }
+            if (buffer.isEvicted()) {
+                buffer = getBuffer(bizTag);
+                continue;
+            }
+            if (!switchToNextSegment(buffer, segment)) {
+                throw new IdGenException(EXCEPTION_ID_TWO_SEGMENTS_ARE_NULL, "bizTag " + bizTag + " 的两个号段均未就绪");
+            }
+        }
+    }
+
+    /**
+     * 获取 bizTag 对应的 SegmentBuffer，必要时完成整体初始化与该 tag 首段的同步加载
+     *
+     * @param bizTag 业务标签
+     * @return 已初始化的 SegmentBuffer
+     * @throws IdGenException 初始化失败或 tag 不存在
+     */
+    private SegmentBuffer getBuffer(String bizTag) {
         if (!initOk.get()) {
             try {
                 synchronized (this) {
@@ -100,161 +442,651 @@ public class SegmentIdGeneratorImpl implements IdGen {
                 }
             } catch (Exception e) {
                 log.error("[Segment UID] 初始化失败", e);
-                return new Result(EXCEPTION_ID_IDCACHE_INIT_FALSE, Status.EXCEPTION);
+                throw new IdGenException(EXCEPTION_ID_IDCACHE_INIT_FALSE, "Segment ID 缓存初始化失败", e);
             }
         }
-        SegmentBuffer buffer = cache.get(properties.getBizTag());
+        SegmentBuffer buffer = cache.get(bizTag);
         if (buffer == null) {
-            return new Result(EXCEPTION_ID_KEY_NOT_EXISTS, Status.EXCEPTION);
+            buffer = createBufferOnDemand(bizTag);
         }
 
-        // 如果buffer还没初始化，并且后台没有进行初始化,那么初始化它
+        // 如果buffer还没初始化，那么在首次请求时同步初始化它（每个 tag 各自加锁，互不影响）
         if (!buffer.isInitOk()) {
             synchronized (buffer) {
-                // 首次查询数据库
-                val nextMaxId = dao.nextMaxId(buffer.getKey(), properties.getStep());
-                buffer.getCurrent().setMax(nextMaxId);
-                buffer.getCurrent().setStep(properties.getStep());
-                buffer.getCurrent().getValue().set(nextMaxId - properties.getStep());
-                buffer.setCurrentPos(0);
-
-                buffer.setNextReady(false);
-                buffer.setInitOk(true);
-                log.info("[Segment UID] 初始化段成功，当前段最大值：{}", nextMaxId);
-                return new Result(buffer.getCurrent().getValue().incrementAndGet(), Status.SUCCESS);
+                if (!buffer.isInitOk()) {
+                    val unused = evictedRanges.remove(bizTag);
+                    if (unused != null) {
+                        // 之前被淘汰过，先用淘汰时未发放的区间
+                        installSegments(buffer, unused);
+                    } else {
+                        // 首次查询数据库
+                        buffer.setCurrent(loadFirstSegment(buffer));
+                    }
+                    log.info("[Segment UID] 初始化段成功，bizTag：{}，当前段：{}", buffer.getKey(), buffer.getCurrent());
+                }
             }
         }
+        return buffer;
+    }
 
-        while (true) {
-            // 加读锁
-            buffer.getLock().readLock().lock();
+    /**
+     * 同步加载 tag 的首段，数据库异常转换为 IdGenException，与其他失败一样以异常码返回给调用方
+     *
+     * @param buffer buffer
+     * @return 首段
+     * @throws IdGenException 申请号段失败（-3）
+     */
+    private Segment loadFirstSegment(SegmentBuffer buffer) {
+        try {
+            return loadSegment(buffer);
+        } catch (RuntimeException e) {
+            log.warn("[Segment UID] 加载首段失败，bizTag：{}", buffer.getKey(), e);
+            throw new IdGenException(EXCEPTION_ID_TWO_SEGMENTS_ARE_NULL, "bizTag " + buffer.getKey() + " 加载首段失败", e);
+        }
+    }
+
+    /**
+     * 判断是否需要异步预加载后续号段（预取深度 = segmentCount - 1）：
+     * - 当id的值超过当前段prepareNextPercent，且 ready 段不足预取深度时加载；
+     * - 预取深度大于 1 时，ready 段少于 预取深度 - 1 就立即补齐，不等当前段到阈值。
+     * 先做普通读判断，只有真正需要加载时才做 CAS，避免热路径上的无谓竞争
+     *
+     * @param buffer  buffer
+     * @param segment 本次发号所在的段
+     * @param id      本次发出的（最大）ID
+     */
+    private void prepareNextSegmentIfNeeded(SegmentBuffer buffer, Segment segment, long id) {
+        val readyCount = buffer.getReadyCount();
+        val prefetchDepth = properties.getSegmentCount() - 1;
+        if (readyCount < prefetchDepth
+                && (readyCount < prefetchDepth - 1
+                    || segment.getMax() - id < segment.getStep() * (properties.getPrepareNextPercent() / 100.0))
+                && !buffer.getThreadRunning().get()) {
+            submitPrepareNextSegment(buffer);
+        }
+    }
+
+    /**
+     * 提交异步加载后续号段的任务，同一 buffer 同时只会有一个加载任务。
+     * buffer 先放入待加载队列，由 flush 任务取出后与其他 tag 合并为批量申请：
+     * flush 任务开始执行之前到达的请求都会被合并，配置了 fetchCoalesceWindow 时再额外等待一个窗口
+     *
+     * @param buffer buffer
+     */
+    private void submitPrepareNextSegment(SegmentBuffer buffer) {
+        if (buffer.isEvicted() || !buffer.getThreadRunning().compareAndSet(false, true)) {
+            return;
+        }
+        pendingPrefetch.offer(buffer);
+        if (prefetchFlushScheduled.compareAndSet(false, true)) {
+            val window = properties.getFetchCoalesceWindow();
+            if (window.isZero()) {
+                executeFlush();
+                return;
+            }
             try {
-                // 当id的值超过当前段80%的时候，开始异步准备下一段
-                if (!buffer.isNextReady()
-                        && buffer.getCurrent().getIdle() < buffer.getCurrent().getStep() * (properties.getPrepareNextPercent() / 100.0)
-                        && buffer.getThreadRunning().compareAndSet(false, true)) {
-                    taskExecutor.execute(() -> {
-                        try {
-                            log.info("[Segment UID] 触发异步加载下一段，当前已用百分比：{}%", properties.getPrepareNextPercent());
-                            prepareNextSegment(buffer);
-                        } finally {
-                            // 同步状态时加写锁
-                            buffer.getLock().writeLock().lock();
-                            buffer.getThreadRunning().set(false);
-                            buffer.setNextReady(true);
-                            buffer.getLock().writeLock().unlock();
-                        }
-                    });
+                segmentUidScheduler.schedule(this::executeFlush, window.toNanos(), TimeUnit.NANOSECONDS);
+            } catch (RejectedExecutionException e) {
+                abandonPendingPrefetch(e);
+            }
+        }
+    }
+
+    /**
+     * 把 flush 任务交给预加载线程池；线程池拒绝时放弃本轮预加载，而不是把异常抛给发号线程
+     */
+    private void executeFlush() {
+        try {
+            taskExecutor.execute(this::flushPendingPrefetch);
+        } catch (RejectedExecutionException e) {
+            abandonPendingPrefetch(e);
+        }
+    }
+
+    /**
+     * 放弃待加载队列中的 buffer：按加载失败处理，复位 threadRunning 并唤醒等待线程，
+     * 保证 buffer 不会因为任务没能提交而永远处于加载中；下次发号或切段时会重新提交
+     *
+     * @param e 线程池拒绝的异常
+     */
+    private void abandonPendingPrefetch(RejectedExecutionException e) {
+        prefetchFlushScheduled.set(false);
+        List<String> keys = new ArrayList<>();
+        SegmentBuffer buffer;
+        while ((buffer = pendingPrefetch.poll()) != null) {
+            keys.add(buffer.getKey());
+            finishPrepare(buffer, false);
+        }
+        log.warn("[Segment UID] 预加载线程池拒绝任务，放弃本轮预加载，bizTag：{}，原因：{}", keys, e.getMessage());
+    }
+
+    /**
+     * 取出窗口内积累的待加载 buffer，按 fetchBatchSize 分批，每批一个任务
+     */
+    private void flushPendingPrefetch() {
+        // 先复位再取队列：复位之后入队的 buffer 会触发下一次 flush，不会被遗漏
+        prefetchFlushScheduled.set(false);
+        List<SegmentBuffer> batch = new ArrayList<>();
+        SegmentBuffer buffer;
+        while ((buffer = pendingPrefetch.poll()) != null) {
+            batch.add(buffer);
+            if (batch.size() == properties.getFetchBatchSize()) {
+                val full = batch;
+                try {
+                    taskExecutor.execute(() -> prepareNextSegments(full));
+                } catch (RejectedExecutionException e) {
+                    // 已经在预加载线程上，线程池满时直接在当前线程加载
+                    prepareNextSegments(full);
                 }
+                batch = new ArrayList<>();
+            }
+        }
+        if (!batch.isEmpty()) {
+            prepareNextSegments(batch);
+        }
+    }
 
-                val id = buffer.getCurrent().getValue().incrementAndGet();
-                if (id < buffer.getCurrent().getMax()) {
-                    return new Result(id, Status.SUCCESS);
+    /**
+     * 为一批 buffer 加载后续号段，每轮为每个仍缺段的 buffer 申请一段，多个 buffer 时合并为一次 dao.nextMaxIds。
+     * 结束（成功或失败）时复位 threadRunning 并唤醒等待线程
+     *
+     * @param buffers 已经由调用方置 threadRunning 的 buffer
+     */
+    private void prepareNextSegments(List<SegmentBuffer> buffers) {
+        List<SegmentBuffer> pending = buffers;
+        try {
+            if (log.isInfoEnabled()) {
+                log.info("[Segment UID] 触发异步加载下一段，bizTag：{}", pending.stream().map(SegmentBuffer::getKey).collect(Collectors.toList()));
+            }
+            pending = acquirePrefetch(distinctLiveBuffers(pending));
+            while (!pending.isEmpty()) {
+                List<SegmentBuffer> next = new ArrayList<>();
+                for (SegmentBuffer buffer : loadSegmentsWithBreaker(pending)) {
+                    if (needsMoreSegments(buffer)) {
+                        next.add(buffer);
+                    } else {
+                        finishPrepare(buffer, true);
+                    }
                 }
-            } finally {
-                buffer.getLock().readLock().unlock();
+                pending = acquirePrefetch(distinctLiveBuffers(next));
+            }
+        } catch (Exception e) {
+            log.warn("[Segment UID] 加载下一段失败，bizTag：{}", pending.stream().map(SegmentBuffer::getKey).collect(Collectors.toList()), e);
+            pending.forEach(buffer -> finishPrepare(buffer, false));
+        }
+    }
+
+    /**
+     * 去掉已淘汰的 buffer，同一 tag 只保留一个 buffer，其余按加载失败结束。
+     * nextMaxIds 按 tag 合并申请，同一 tag 的新旧两个 buffer 进入同一批时会拿到同一个号段，发出重复 ID
+     *
+     * @param buffers 待加载的 buffer
+     * @return 未淘汰且 tag 互不相同的 buffer
+     */
+    private List<SegmentBuffer> distinctLiveBuffers(List<SegmentBuffer> buffers) {
+        Map<String, SegmentBuffer> live = new LinkedHashMap<>(buffers.size() * 2);
+        for (SegmentBuffer buffer : buffers) {
+            if (buffer.isEvicted()) {
+                finishPrepare(buffer, false);
+                continue;
+            }
+            val kept = live.putIfAbsent(buffer.getKey(), buffer);
+            if (kept != null && kept != buffer) {
+                finishPrepare(buffer, false);
+            }
+        }
+        return live.size() == buffers.size() ? buffers : new ArrayList<>(live.values());
+    }
+
+    /**
+     * 熔断中的 tag 本轮不访问数据库，直接按加载失败结束（失败后可以启用应急号段）
+     *
+     * @param buffers 待加载的 buffer
+     * @return 允许访问数据库的 buffer
+     */
+    private List<SegmentBuffer> acquirePrefetch(List<SegmentBuffer> buffers) {
+        if (circuitBreaker == null) {
+            return buffers;
+        }
+        List<SegmentBuffer> allowed = new ArrayList<>(buffers.size());
+        for (SegmentBuffer buffer : buffers) {
+            if (circuitBreaker.tryAcquire(buffer.getKey())) {
+                allowed.add(buffer);
+            } else {
+                finishPrepare(buffer, false);
             }
+        }
+        return allowed;
+    }
 
-            // 当id为当前segment的最大值，那么切换到下一个段
-            waitAndSleep(buffer);// 等一下，避免线程空转
-            buffer.getLock().writeLock().lock(); // 加写锁
+    /**
+     * loadSegments 并把结果按 tag 计入熔断统计。
+     * 合并申请失败时无法区分是哪个 tag 的问题，逐个重新申请，只把各自失败的 tag 计为失败，
+     * 否则一个 tag 的失败会按批量大小放大到同批的所有 tag 上
+     *
+     * @param buffers buffers
+     * @return 成功申请到号段的 buffer；单独申请也失败的 buffer 已经按失败结束
+     */
+    private List<SegmentBuffer> loadSegmentsWithBreaker(List<SegmentBuffer> buffers) {
+        if (circuitBreaker == null) {
+            return loadSegments(buffers);
+        }
+        if (buffers.size() > 1) {
+            try {
+                loadSegments(buffers);
+                buffers.forEach(buffer -> circuitBreaker.onSuccess(buffer.getKey()));
+                return buffers;
+            } catch (RuntimeException e) {
+                log.debug("[Segment UID] 合并申请号段失败，逐个重新申请：{}", e.getMessage());
+            }
+        }
+        List<SegmentBuffer> loaded = new ArrayList<>(buffers.size());
+        for (SegmentBuffer buffer : buffers) {
             try {
-                // 再次尝试获取，如果还没超出 max，说明其他线程已完成切换
-                val newId = buffer.getCurrent().getValue().incrementAndGet();
-                if (newId < buffer.getCurrent().getMax()) {
-                    return new Result(newId, Status.SUCCESS);
+                addLoadedSegment(buffer, loadSegment(buffer));
+                circuitBreaker.onSuccess(buffer.getKey());
+                loaded.add(buffer);
+            } catch (RuntimeException e) {
+                circuitBreaker.onFailure(buffer.getKey());
+                if (buffers.size() == 1) {
+                    throw e;
                 }
+                log.warn("[Segment UID] 加载下一段失败，bizTag：{}", buffer.getKey(), e);
+                finishPrepare(buffer, false);
+            }
+        }
+        return loaded;
+    }
+
+    /**
+     * 为每个 buffer 申请一段：ready 不足预取深度时放入 ready，否则放入应急号段
+     *
+     * @param buffers buffers
+     * @return 传入的 buffers
+     */
+    private List<SegmentBuffer> loadSegments(List<SegmentBuffer> buffers) {
+        if (buffers.size() == 1) {
+            addLoadedSegment(buffers.get(0), loadSegment(buffers.get(0)));
+            return buffers;
+        }
+        Map<String, Integer> steps = new HashMap<>();
+        buffers.forEach(buffer -> steps.put(buffer.getKey(), nextStep(buffer)));
+        val begin = System.nanoTime();
+        Map<String, Long> maxIds = null;
+        try {
+            maxIds = dao.nextMaxIds(steps, timeFloor());
+        } finally {
+            val nanos = System.nanoTime() - begin;
+            val success = maxIds != null;
+            buffers.forEach(buffer -> buffer.getStats().recordFetch(nanos, success));
+        }
+        for (SegmentBuffer buffer : buffers) {
+            val step = steps.get(buffer.getKey());
+            buffer.setStep(step);
+            addLoadedSegment(buffer, new Segment(buffer, maxIds.get(buffer.getKey()), step));
+        }
+        return buffers;
+    }
+
+    private void addLoadedSegment(SegmentBuffer buffer, Segment segment) {
+        if (buffer.getReadyCount() < properties.getSegmentCount() - 1) {
+            buffer.addReady(segment);
+            buffer.signalWaiters();
+        } else {
+            buffer.addReserve(segment);
+        }
+    }
 
-                if (buffer.isNextReady()) {
-                    buffer.switchPos();
-                    buffer.setNextReady(false);
-                    log.info("[Segment UID] 切换号段完成，新段起始值：{}", buffer.getCurrent().getValue().get());
-                } else {
-                    log.error("Both two segments in {} are not ready!", buffer);
-                    return new Result(EXCEPTION_ID_TWO_SEGMENTS_ARE_NULL, Status.EXCEPTION);
+    /**
+     * ready 段是否还不足预取深度，或应急号段是否还不足 reserveSegments
+     */
+    private boolean needsMoreSegments(SegmentBuffer buffer) {
+        return buffer.getReadyCount() < properties.getSegmentCount() - 1
+                || buffer.getReserveCount() < properties.getReserveSegments();
+    }
+
+    private void finishPrepare(SegmentBuffer buffer, boolean success) {
+        if (success) {
+            buffer.getLoadFailures().set(0);
+        } else {
+            buffer.getLoadFailures().incrementAndGet();
+        }
+        buffer.getThreadRunning().set(false);
+        // 无论成功失败都唤醒等待线程，失败时让它们尽快返回而不是等到超时
+        buffer.signalWaiters();
+    }
+
+    /**
+     * 当前段已用完时切换到下一段，只有对 current 引用 CAS 成功的线程完成安装
+     *
+     * @param buffer    buffer
+     * @param exhausted 调用方观察到的已用完的段
+     * @return true 表示可以重新发号（自己或其他线程完成了切换），false 表示两段均未就绪
+     */
+    private boolean switchToNextSegment(SegmentBuffer buffer, Segment exhausted) {
+        if (buffer.switchToNext(exhausted)) {
+            return true;
+        }
+        buffer.getStats().getNotReady().increment();
+        val deadline = System.nanoTime() + properties.getSegmentWaitTimeout().toNanos();
+        boolean submitted = false;
+        while (true) {
+            // buffer 已被淘汰，交给调用方切换到新的 buffer
+            if (buffer.isEvicted()) {
+                return true;
+            }
+            // 下一段既没就绪也没在加载（例如上一个加载任务刚结束、或上次加载失败），补发一次加载
+            if (!buffer.getThreadRunning().get()) {
+                if (submitted) {
+                    // 自己补发的加载也已结束仍没有可用段，说明加载失败，不再等待
+                    break;
                 }
-            } finally {
-                buffer.getLock().writeLock().unlock();
+                submitPrepareNextSegment(buffer);
+                submitted = true;
+            }
+            // 挂起等待，避免线程空转
+            if (!waitForNextSegment(buffer, exhausted, deadline - System.nanoTime())) {
+                break;
+            }
+            if (buffer.switchToNext(exhausted)) {
+                return true;
+            }
+        }
+        // 放弃前最后确认一次，期间可能有其他线程完成了切换
+        if (buffer.switchToNext(exhausted)) {
+            return true;
+        }
+        // 后台加载失败（数据库故障或熔断中）时启用应急号段；只是加载慢时不动用，留给真正的故障
+        if (buffer.getLoadFailures().get() > 0 && buffer.promoteReserve()) {
+            buffer.signalWaiters();
+            if (buffer.switchToNext(exhausted)) {
+                return true;
             }
         }
+        buffer.getStats().getUnavailable().increment();
+        log.error("Both two segments in {} are not ready!", buffer);
+        return false;
     }
 
     /**
-     * 准备下一段segment，buffer.getThreadRunning()的状态由调用者维护
+     * 从数据库申请一个新号段
      * @param buffer buffer
+     * @return 新的 Segment
      */
-    private void prepareNextSegment(SegmentBuffer buffer) {
-//        buffer.getThreadRunning().set(true); //调用方法的时候已经compareAndSet了
-        val nextMaxId = dao.nextMaxId(buffer.getKey(), properties.getStep());
-        buffer.getNext().setMax(nextMaxId);
-        buffer.getNext().setStep(properties.getStep());
-        buffer.getNext().getValue().set(nextMaxId - properties.getStep());
-        // 运行结束，修改运行标识
-//        buffer.getThreadRunning().set(false); //调用方法的时候会在finally中修改标识，所以此处就注掉了
-//        buffer.setNextReady(true);
+    private Segment loadSegment(SegmentBuffer buffer) {
+        val step = nextStep(buffer);
+        // 选定的步长会随 nextMaxId 一起写入 leaf_alloc.step
+        val nextMaxId = fetchMaxId(buffer, step);
+        buffer.setStep(step);
+        return new Segment(buffer, nextMaxId, step);
+    }
 
+    /**
+     * 调用 dao.nextMaxId 并记录耗时与成功失败
+     * @param buffer buffer
+     * @param step   步长
+     * @return 新的 max_id
+     */
+    private long fetchMaxId(SegmentBuffer buffer, int step) {
+        val begin = System.nanoTime();
+        boolean success = false;
+        try {
+            val nextMaxId = dao.nextMaxId(buffer.getKey(), step, timeFloor());
+            success = true;
+            return nextMaxId;
+        } finally {
+            buffer.getStats().recordFetch(System.nanoTime() - begin, success);
+        }
     }
 
-    private void waitAndSleep(SegmentBuffer buffer) {
-        int roll = 0;
-        while (buffer.getThreadRunning().get()) {
-            roll += 1;
-            if(roll > 10000) {
-                try {
-                    TimeUnit.MILLISECONDS.sleep(10);
-                    break;
-                } catch (InterruptedException e) {
-                    log.warn("Thread {} Interrupted",Thread.currentThread().getName());
-                    break;
+    /**
+     * 为批量取号申请专用区间：只推进 max_id，不把 count 当作步长写回 leaf_alloc.step
+     *
+     * @param buffer buffer
+     * @param count  区间长度
+     * @return 新的 max_id
+     */
+    private long fetchRange(SegmentBuffer buffer, int count) {
+        val begin = System.nanoTime();
+        boolean success = false;
+        try {
+            val maxId = dao.allocateRange(buffer.getKey(), count, timeFloor());
+            success = true;
+            return maxId;
+        } finally {
+            buffer.getStats().recordFetch(System.nanoTime() - begin, success);
+        }
+    }
+
+    /**
+     * 开启 timeOrdered 时申请号段的下限：当前时间前缀左移 sequenceBits 位，未开启时为 0
+     *
+     * @return max_id 的下限
+     */
+    private long timeFloor() {
+        val timeOrdered = properties.getTimeOrdered();
+        if (!timeOrdered.isEnabled()) {
+            return 0;
+        }
+        return (System.currentTimeMillis() - timeOrdered.getEpoch()) / timeOrdered.getTimeUnit().toMillis()
+                << timeOrdered.getSequenceBits();
+    }
+
+    /**
+     * 开启 timeOrdered 时从 ID 中解析出号段申请时间（按 timeUnit 向下取整），可用于按时间分区。
+     * 同一时间单位内发号超过 2^sequenceBits 个时，解析出的时间会晚于实际申请时间
+     *
+     * @param id ID
+     * @return 毫秒时间戳
+     * @throws IllegalStateException 未开启 timeOrdered
+     */
+    public long extractTimestamp(long id) {
+        val timeOrdered = properties.getTimeOrdered();
+        if (!timeOrdered.isEnabled()) {
+            throw new IllegalStateException("未开启 wenziyue.uid.time-ordered");
+        }
+        return timeOrdered.getEpoch() + (id >>> timeOrdered.getSequenceBits()) * timeOrdered.getTimeUnit().toMillis();
+    }
+
+    /**
+     * 参考 Leaf 的动态步长：根据上一个用完的号段的实际使用时长（从开始发号到被切走）决定本次步长
+     * - 使用时长小于 segmentDuration：在上一段步长基础上翻倍（不超过 maxStep）；
+     * - 使用时长大于等于 2 倍 segmentDuration：在上一段步长基础上减半（不低于 minStep）；
+     * - 其余情况保持不变。
+     * 以上一段步长为基准，一轮预取连续加载多段时步长不会被重复放大
+     *
+     * @param buffer buffer
+     * @return 本次申请号段使用的步长
+     */
+    private int nextStep(SegmentBuffer buffer) {
+        val dynamicStep = properties.getDynamicStep();
+        val duration = buffer.getLastSegmentDuration();
+        if (!dynamicStep.isEnabled() || duration == 0) {
+            return buffer.getStep();
+        }
+        val step = buffer.getLastSegmentStep();
+        val target = dynamicStep.getSegmentDuration().toMillis();
+        int nextStep = step;
+        if (duration < target) {
+            nextStep = (int) Math.min((long) step * 2, dynamicStep.getMaxStep());
+        } else if (duration >= target * 2) {
+            nextStep = Math.max(step / 2, dynamicStep.getMinStep());
+        }
+        if (nextStep != step) {
+            log.info("[Segment UID] 调整步长，bizTag：{}，上一段使用时长：{}ms，步长：{} -> {}", buffer.getKey(), duration, step, nextStep);
+        }
+        return nextStep;
+    }
+
+    /**
+     * 等待后台加载任务装好下一段：阻塞在 buffer 的 Condition 上，不占 CPU，
+     * 加载成功或失败时都会被立即唤醒
+     *
+     * @param buffer       buffer
+     * @param exhausted    调用方观察到的已用完的段
+     * @param timeoutNanos 剩余可等待的时间
+     * @return false 表示等待超时或被中断
+     */
+    private boolean waitForNextSegment(SegmentBuffer buffer, Segment exhausted, long timeoutNanos) {
+        try {
+            if (!buffer.awaitNext(exhausted, timeoutNanos)) {
+                log.warn("[Segment UID] 等待 {}ms 后下一段仍未就绪，bizTag：{}", properties.getSegmentWaitTimeout().toMillis(), buffer.getKey());
+                return false;
+            }
+            return true;
+        } catch (InterruptedException e) {
+            log.warn("Thread {} Interrupted", Thread.currentThread().getName());
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * 淘汰空闲 tag：先淘汰超过 idleTimeout 没有发号的 tag，缓存的 tag 仍多于 maxTags 时再按最近活跃时间从早到晚淘汰。
+     * 活跃时间由本任务比较前后两次的累计发号数得出，发号路径上不做任何记录；
+     * 正在加载号段的 tag 本轮跳过
+     */
+    private void evictIdleBuffers() {
+        val eviction = properties.getEviction();
+        val now = System.currentTimeMillis();
+        val idleTimeout = eviction.getIdleTimeout().toMillis();
+        List<SegmentBuffer> candidates = new ArrayList<>();
+        int evicted = 0;
+        for (SegmentBuffer buffer : cache.values()) {
+            val lastActive = buffer.refreshLastActiveTime(now);
+            if (buffer.getThreadRunning().get()) {
+                continue;
+            }
+            if (now - lastActive >= idleTimeout) {
+                if (evict(buffer)) {
+                    evicted++;
+                }
+            } else {
+                candidates.add(buffer);
+            }
+        }
+        val excess = cache.size() - eviction.getMaxTags();
+        if (excess > 0) {
+            candidates.sort(Comparator.comparingLong(SegmentBuffer::getLastActiveTime));
+            for (int i = 0; i < candidates.size() && i < excess; i++) {
+                if (evict(candidates.get(i))) {
+                    evicted++;
                 }
             }
         }
+        if (evicted > 0) {
+            log.info("[Segment UID] 淘汰 {} 个空闲 tag，本地剩余 {} 个 tag", evicted, cache.size());
+        }
+    }
+
+    /**
+     * 淘汰一个 buffer：移出缓存后关闭全部号段，按配置保留未发放的区间，并通知监听器。
+     * 移出缓存之后的新请求会创建新的 buffer；仍持有旧引用的线程发完当前段的号之后切换到新的 buffer。
+     * 淘汰前先占用 threadRunning，与预加载互斥，淘汰后不再释放，旧 buffer 不会再加载号段
+     *
+     * @param buffer buffer
+     * @return 是否由本次调用完成淘汰
+     */
+    private boolean evict(SegmentBuffer buffer) {
+        if (cache.get(buffer.getKey()) != buffer) {
+            return false;
+        }
+        if (!buffer.getThreadRunning().compareAndSet(false, true)) {
+            // 正在加载号段，下一轮再淘汰
+            return false;
+        }
+        // 先通知再移出缓存，保证同一 tag 新 buffer 的 onCreated 一定在本次 onRemoved 之后
+        bufferListeners.forEach(listener -> listener.onRemoved(buffer));
+        cache.remove(buffer.getKey(), buffer);
+        buffer.markEvicted();
+        if (circuitBreaker != null) {
+            circuitBreaker.remove(buffer.getKey());
+        }
+        val unused = closeSegments(buffer);
+        if (properties.getEviction().isKeepUnusedRanges() && !unused.isEmpty()) {
+            evictedRanges.put(buffer.getKey(), unused);
+        }
+        // 唤醒等待旧 buffer 下一段的线程，改用新的 buffer
+        buffer.signalWaiters();
+        evictions.increment();
+        log.debug("[Segment UID] 淘汰空闲 tag：{}，保留未发放区间 {} 个", buffer.getKey(), unused.size());
+        return true;
+    }
+
+    /**
+     * 按 eviction.interval 定期淘汰空闲 tag，单次失败不影响后续执行
+     */
+    private void scheduleEviction() {
+        val eviction = properties.getEviction();
+        if (!eviction.isEnabled()) {
+            return;
+        }
+        val interval = eviction.getInterval().toMillis();
+        segmentUidScheduler.scheduleWithFixedDelay(() -> {
+            try {
+                evictIdleBuffers();
+            } catch (Exception e) {
+                log.warn("[Segment UID] 淘汰空闲 tag 失败", e);
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 累计淘汰的 tag 数，供监控使用
+     * @return long
+     */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * 被淘汰后保留了未发放区间的 tag 数，供监控使用
+     * @return int
+     */
+    public int getEvictedRangeTags() {
+        return evictedRanges.size();
+    }
+
+    /**
+     * 注册 SegmentBuffer 监听器，并对已存在的 buffer 立即回调 onCreated
+     * @param listener listener
+     */
+    public void addBufferListener(SegmentBufferListener listener) {
+        bufferListeners.add(listener);
+        cache.values().forEach(listener::onCreated);
     }
 
-//    /**
-//     * 等待线程运行结束
-//     * @param buffer buffer
-//     */
-//    private void waitAndSleep(SegmentBuffer buffer) {
-//        long startTime = System.currentTimeMillis();
-//        long timeout = 50L; // 最长允许等待时间
-//        boolean waitOver = false;
-//
-//        int roll = 0;
-//        while (buffer.getThreadRunning().get()) {
-//            roll++;
-//            if (roll <= 10000) {
-//                Thread.yield(); // 空转让出 CPU
-//                continue;
-//            }
-//
-//            if (System.currentTimeMillis() - startTime > timeout) {
-//                waitOver = true;
-//            } else {
-//                try {
-//                    TimeUnit.MILLISECONDS.sleep(1); // 精细 sleep
-//                } catch (InterruptedException e) {
-//                    Thread.currentThread().interrupt();
-//                    waitOver  = true;
-//                }
-//            }
-//
-//            if (waitOver) {
-//                if (buffer.getThreadRunning().get()) {
-//                    if (Thread.currentThread().isInterrupted()) {
-//                        log.warn("[Segment UID] 等待期间线程被中断，下一段仍未就绪");
-//                        throw new IllegalStateException("Segment waiting interrupted and next segment not ready");
-//                    } else {
-//                        log.warn("[Segment UID] 等待 {}ms 后下一段仍未就绪", timeout);
-//                        throw new IllegalStateException("当前号段已用尽，下一段未就绪，请稍后再试");
-//                    }
-//                } else {
-//                    break;
-//                }
-//            }
-//        }
-//    }
-//
+    /**
+     * 当前缓存的全部 SegmentBuffer（只读视图），供监控使用
+     * @return Collection
+     */
+    public Collection<SegmentBuffer> getBuffers() {
+        return Collections.unmodifiableCollection(cache.values());
+    }
+
+    /**
+     * 默认业务标签（wenziyue.uid.biz-tag）
+     * @return String
+     */
+    public String getDefaultBizTag() {
+        return properties.getBizTag();
+    }
+
+    /**
+     * 号段预加载使用的线程池，供监控使用
+     * @return Executor，默认为 ThreadPoolTaskExecutor，开启虚拟线程时为每个任务一个虚拟线程的 ExecutorService
+     */
+    public Executor getTaskExecutor() {
+        return taskExecutor;
+    }
+
+    /**
+     * 线程领取的小段，可发放的 ID 为 [next, limit)
+     */
+    private static final class IdChunk {
+        private long next;
+        private long limit;
+    }
 
     /**
      * 采用懒加载的模式。初始化分为两步
@@ -265,40 +1097,196 @@ public class SegmentIdGeneratorImpl implements IdGen {
      */
     @Override
     public boolean init() {
-        updateCacheFromDb();
+        if (properties.getTimeOrdered().isEnabled() && !dao.supportsFloor()) {
+            // 否则要等到第一次申请号段时才会失败
+            throw new IllegalStateException(dao.getClass().getName() + " 不支持带下限申请号段，不能开启 wenziyue.uid.timeOrdered");
+        }
+        val restoredTags = restoreCheckpoint();
+        try {
+            updateCacheFromDb();
+        } catch (RuntimeException e) {
+            if (restoredTags.isEmpty()) {
+                throw e;
+            }
+            // 已经从 checkpoint 恢复了号段，数据库暂时不可用时先用恢复的号段发号，由定时刷新补齐 tag
+            log.warn("[Segment UID] 读取 leaf_alloc 失败，先使用 checkpoint 恢复的号段：{}", restoredTags, e);
+        }
         initOk.set(true);
         updateCacheFromDbAtEveryMinute();
+        scheduleEviction();
         return true;
     }
 
     /**
-     * 通过数据库更新cache，去掉已经删除的tag，添加新的tag
+     * 从本地 checkpoint 恢复上次优雅停机时未用完的号段，直接作为对应 tag 的当前段与预加载段
+     *
+     * @return 恢复了号段的 tag
+     */
+    private Set<String> restoreCheckpoint() {
+        val checkpoint = properties.getCheckpoint();
+        if (!checkpoint.isEnabled()) {
+            return Collections.emptySet();
+        }
+        val restored = new SegmentCheckpoint(Paths.get(checkpoint.getPath())).restore();
+        restored.forEach((tag, ranges) -> {
+            val buffer = cache.computeIfAbsent(tag, this::createBuffer);
+            synchronized (buffer) {
+                if (!buffer.isInitOk()) {
+                    installSegments(buffer, ranges);
+                }
+            }
+        });
+        return restored.keySet();
+    }
+
+    /**
+     * 把未发放的区间装入尚未初始化的 buffer：第一个作为当前段，其余依次作为预加载段。
+     * 调用方需持有 buffer 的锁
+     *
+     * @param buffer buffer
+     * @param ranges 未发放的区间，按发号顺序排列
+     */
+    private void installSegments(SegmentBuffer buffer, List<SegmentCheckpoint.Range> ranges) {
+        for (SegmentCheckpoint.Range range : ranges) {
+            val segment = new Segment(buffer, range.getMax(), range.getStep(), range.getStart());
+            if (buffer.isInitOk()) {
+                buffer.addReady(segment);
+            } else {
+                buffer.setCurrent(segment);
+            }
+        }
+    }
+
+    /**
+     * 优雅停机时关闭所有号段并把未发放的部分写入本地 checkpoint。
+     * 先关闭再记录：关闭之后号段上不会再发出任何 ID，记录下来的区间一定从未发放过；
+     * 停机过程中仍在发号的请求会重新向数据库申请号段，不会与记录的区间重复
+     */
+    @PreDestroy
+    public void shutdown() {
+        val checkpoint = properties.getCheckpoint();
+        if (!checkpoint.isEnabled() || !initOk.get() || !closed.compareAndSet(false, true)) {
+            return;
+        }
+        Map<String, List<SegmentCheckpoint.Range>> ranges = new LinkedHashMap<>();
+        cache.values().forEach(buffer -> {
+            val unused = closeSegments(buffer);
+            if (!unused.isEmpty()) {
+                ranges.put(buffer.getKey(), unused);
+            }
+        });
+        // 被淘汰 tag 保留的区间同样从未发放过，tag 仍在缓存中时排在其现有区间之后
+        synchronized (evictedRanges) {
+            evictedRanges.forEach((tag, unused) -> ranges.computeIfAbsent(tag, k -> new ArrayList<>()).addAll(unused));
+            evictedRanges.clear();
+        }
+        try {
+            new SegmentCheckpoint(Paths.get(checkpoint.getPath())).save(ranges);
+        } catch (IOException e) {
+            log.warn("[Segment UID] 写入 checkpoint 失败，未用完的号段将被丢弃", e);
+        }
+    }
+
+    /**
+     * 依次关闭当前段、全部预加载段与应急号段，返回其中未发放的区间
+     *
+     * @param buffer buffer
+     * @return 未发放的区间，按发号顺序排列
+     */
+    private List<SegmentCheckpoint.Range> closeSegments(SegmentBuffer buffer) {
+        List<Segment> segments = new ArrayList<>();
+        if (buffer.isInitOk()) {
+            segments.add(buffer.getCurrent());
+        }
+        segments.addAll(buffer.getReady());
+        segments.addAll(buffer.getReserve());
+        List<SegmentCheckpoint.Range> ranges = new ArrayList<>();
+        for (Segment segment : segments) {
+            // 同一个段可能同时出现在 current 与 ready 中（切段尚未出队），第二次关闭时返回 max，自然被跳过
+            val start = segment.close();
+            if (start < segment.getMax() - 1) {
+                ranges.add(new SegmentCheckpoint.Range(start, segment.getMax(), segment.getStep()));
+            }
+        }
+        return ranges;
+    }
+
+    /**
+     * 通过数据库增量更新cache：只查询 update_time 不早于水位的 tag 并添加其中的新 tag。
+     * 不再根据数据库删除本地 tag，避免某一行短暂不可见时把正在使用的 buffer 连同预加载段一起丢掉
      */
     private void updateCacheFromDb() {
-        val allTags = dao.getAllTags();
-        Set<String> currentTags = new HashSet<>(cache.keySet());
-        // 新增
-        Set<String> newTags = new HashSet<>(allTags);
-        newTags.removeAll(currentTags);
-        // 删除
-        Set<String> removedTags = new HashSet<>(currentTags);
-        allTags.forEach(removedTags::remove);
+        val since = tagWatermark;
+        val tags = dao.getTagsUpdatedSince(since);
+        long latest = since;
+        for (Map.Entry<String, Long> entry : tags.entrySet()) {
+            cache.computeIfAbsent(entry.getKey(), this::createBuffer);
+            latest = Math.max(latest, entry.getValue());
+        }
+        // 水位回退一段重叠时间，覆盖提交较晚、update_time 却早于当前水位的行
+        tagWatermark = Math.max(since, latest - TAG_REFRESH_OVERLAP_MILLIS);
+        missingTags.clear();
+        log.debug("[Segment UID] 刷新 tag 列表，水位：{}，本次查询到 {} 个 tag，本地共 {} 个 tag", since, tags.size(), cache.size());
+    }
+
+    /**
+     * 首次使用尚未刷新到本地的 tag：开启 autoCreateTag 时直接创建（首次申请号段时插入 leaf_alloc），
+     * 否则到数据库确认 tag 存在后再创建。确认不存在的 tag 在下次刷新前直接返回 -2，不会反复查询数据库
+     *
+     * @param bizTag 业务标签
+     * @return SegmentBuffer
+     * @throws IdGenException tag 不存在
+     */
+    private SegmentBuffer createBufferOnDemand(String bizTag) {
+        if (bizTag == null) {
+            throw new IdGenException(EXCEPTION_ID_KEY_NOT_EXISTS, "bizTag 不能为空");
+        }
+        if (!properties.isAutoCreateTag() && !evictedRanges.containsKey(bizTag)) {
+            if (missingTags.containsKey(bizTag)) {
+                throw new IdGenException(EXCEPTION_ID_KEY_NOT_EXISTS, "bizTag " + bizTag + " 不存在");
+            }
+            boolean exists;
+            try {
+                exists = dao.existsTag(bizTag);
+            } catch (RuntimeException e) {
+                throw new IdGenException(EXCEPTION_ID_KEY_NOT_EXISTS, "查询 bizTag " + bizTag + " 失败", e);
+            }
+            if (!exists) {
+                if (missingTags.size() >= MAX_MISSING_TAGS) {
+                    missingTags.clear();
+                }
+                missingTags.put(bizTag, Boolean.TRUE);
+                throw new IdGenException(EXCEPTION_ID_KEY_NOT_EXISTS, "bizTag " + bizTag + " 不存在");
+            }
+        }
+        log.info("[Segment UID] 首次使用 bizTag：{}，创建 SegmentBuffer", bizTag);
+        return cache.computeIfAbsent(bizTag, this::createBuffer);
+    }
 
-        newTags.forEach(tag -> cache.put(tag, new SegmentBuffer(tag)));
-        removedTags.forEach(cache::remove);
+    /**
+     * 创建 tag 对应的空 SegmentBuffer 并通知监听器
+     *
+     * @param tag 业务标签
+     * @return SegmentBuffer
+     */
+    private SegmentBuffer createBuffer(String tag) {
+        val buffer = new SegmentBuffer(tag, properties.getStep());
+        bufferListeners.forEach(listener -> listener.onCreated(buffer));
+        return buffer;
     }
 
     /**
-     * 每分钟刷新一次cache
+     * 按 cacheRefreshInterval（默认每分钟）增量刷新一次cache，单次失败不影响后续刷新
      */
     private void updateCacheFromDbAtEveryMinute() {
-        segmentUidScheduler.scheduleWithFixedDelay(new Runnable() {
-            @Override
-            public void run() {
+        val interval = properties.getCacheRefreshInterval().toMillis();
+        segmentUidScheduler.scheduleWithFixedDelay(() -> {
+            try {
                 updateCacheFromDb();
+            } catch (Exception e) {
+                log.warn("[Segment UID] 刷新 tag 列表失败", e);
             }
-        }, 60, 60, TimeUnit.SECONDS);
-
+        }, interval, interval, TimeUnit.MILLISECONDS);
     }
 
 }
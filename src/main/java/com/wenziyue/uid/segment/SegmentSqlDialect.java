@@ -0,0 +1,146 @@
+package com.wenziyue.uid.segment;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Locale;
+
+/**
+ * 不同数据库下申请号段的 SQL 方言
+ * - MYSQL：UPDATE ... SET max_id = LAST_INSERT_ID(max_id + ?)，再在同一连接上读 LAST_INSERT_ID()，不存在并发覆盖；
+ * - POSTGRESQL：UPDATE ... RETURNING max_id，一条语句完成；
+ * - H2：SELECT max_id FROM FINAL TABLE (UPDATE ...)，一条语句完成；
+ * - GENERIC：UPDATE + SELECT，依赖调用方提供的事务保证两条语句之间 max_id 不被其他节点修改。
+ * 指定下限 floor 时先把 max_id 抬到 floor 再加 step（CASE WHEN 写法，各数据库通用），用于按时间有序的 ID。
+ * 申请一次性的批量区间时 updateStep 为 false，只推进 max_id，不改写 step 列中记录的步长。
+ *
+ * @author wenziyue
+ */
+public enum SegmentSqlDialect {
+
+    MYSQL {
+        @Override
+        Long updateMaxId(Connection con, String table, String bizTag, int step, long floor, boolean updateStep) throws SQLException {
+            try (PreparedStatement ps = con.prepareStatement(
+                    "UPDATE " + table + " SET max_id = LAST_INSERT_ID(" + increment(floor) + ")" + stepAssignment(updateStep) + " WHERE biz_tag = ?")) {
+                bind(ps, bizTag, step, floor, updateStep);
+                if (ps.executeUpdate() == 0) {
+                    return null;
+                }
+            }
+            // LAST_INSERT_ID 是连接级别的，读到的一定是本连接刚写入的值
+            try (Statement st = con.createStatement();
+                 ResultSet rs = st.executeQuery("SELECT LAST_INSERT_ID()")) {
+                return rs.next() ? rs.getLong(1) : null;
+            }
+        }
+    },
+
+    POSTGRESQL {
+        @Override
+        Long updateMaxId(Connection con, String table, String bizTag, int step, long floor, boolean updateStep) throws SQLException {
+            return queryMaxId(con, "UPDATE " + table + " SET max_id = " + increment(floor) + stepAssignment(updateStep) + " WHERE biz_tag = ? RETURNING max_id",
+                    bizTag, step, floor, updateStep);
+        }
+    },
+
+    H2 {
+        @Override
+        Long updateMaxId(Connection con, String table, String bizTag, int step, long floor, boolean updateStep) throws SQLException {
+            return queryMaxId(con, "SELECT max_id FROM FINAL TABLE (UPDATE " + table + " SET max_id = " + increment(floor) + stepAssignment(updateStep) + " WHERE biz_tag = ?)",
+                    bizTag, step, floor, updateStep);
+        }
+    },
+
+    GENERIC {
+        @Override
+        Long updateMaxId(Connection con, String table, String bizTag, int step, long floor, boolean updateStep) throws SQLException {
+            try (PreparedStatement ps = con.prepareStatement(
+                    "UPDATE " + table + " SET max_id = " + increment(floor) + stepAssignment(updateStep) + " WHERE biz_tag = ?")) {
+                bind(ps, bizTag, step, floor, updateStep);
+                if (ps.executeUpdate() == 0) {
+                    return null;
+                }
+            }
+            try (PreparedStatement ps = con.prepareStatement("SELECT max_id FROM " + table + " WHERE biz_tag = ?")) {
+                ps.setString(1, bizTag);
+                try (ResultSet rs = ps.executeQuery()) {
+                    return rs.next() ? rs.getLong(1) : null;
+                }
+            }
+        }
+    };
+
+    /**
+     * 给 bizTag 的 max_id 加上 step 并返回新的 max_id，同时把 step 写入 step 列，调用方负责事务
+     *
+     * @param floor max_id 的下限，大于 0 时新的 max_id 为 max(max_id, floor) + step
+     * @return 新的 max_id，bizTag 对应的行不存在时返回 null
+     */
+    Long updateMaxId(Connection con, String table, String bizTag, int step, long floor) throws SQLException {
+        return updateMaxId(con, table, bizTag, step, floor, true);
+    }
+
+    /**
+     * @param updateStep 是否把 step 写入 step 列；为 false 时 step 只作为 max_id 的增量
+     */
+    abstract Long updateMaxId(Connection con, String table, String bizTag, int step, long floor, boolean updateStep) throws SQLException;
+
+    /**
+     * 根据 DatabaseMetaData.getDatabaseProductName() 推断方言，无法识别时使用 GENERIC
+     *
+     * @param productName 数据库产品名
+     * @return 方言
+     */
+    public static SegmentSqlDialect fromProductName(String productName) {
+        if (productName == null) {
+            return GENERIC;
+        }
+        String name = productName.toLowerCase(Locale.ROOT);
+        if (name.contains("mysql") || name.contains("mariadb")) {
+            return MYSQL;
+        }
+        if (name.contains("postgresql")) {
+            return POSTGRESQL;
+        }
+        if (name.equals("h2")) {
+            return H2;
+        }
+        return GENERIC;
+    }
+
+    /**
+     * 新 max_id 的表达式，参数由 bind 按顺序绑定
+     */
+    private static String increment(long floor) {
+        return floor > 0 ? "CASE WHEN max_id > ? THEN max_id ELSE ? END + ?" : "max_id + ?";
+    }
+
+    private static String stepAssignment(boolean updateStep) {
+        return updateStep ? ", step = ?" : "";
+    }
+
+    private static void bind(PreparedStatement ps, String bizTag, int step, long floor, boolean updateStep) throws SQLException {
+        int index = 1;
+        if (floor > 0) {
+            ps.setLong(index++, floor);
+            ps.setLong(index++, floor);
+        }
+        ps.setLong(index++, step);
+        if (updateStep) {
+            ps.setInt(index++, step);
+        }
+        ps.setString(index, bizTag);
+    }
+
+    private static Long queryMaxId(Connection con, String sql, String bizTag, int step, long floor, boolean updateStep) throws SQLException {
+        try (PreparedStatement ps = con.prepareStatement(sql)) {
+            bind(ps, bizTag, step, floor, updateStep);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : null;
+            }
+        }
+    }
+}
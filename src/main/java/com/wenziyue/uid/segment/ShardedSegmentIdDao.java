@@ -0,0 +1,232 @@
+package com.wenziyue.uid.segment;
+
+import com.wenziyue.uid.properties.UidGeneratorProperties;
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * 把配置的 tag 拆到 K 行 leaf_alloc（biz_tag 为 tag#0 ~ tag#K-1）上申请号段，避免所有节点争抢同一行的行锁。
+ * <p>
+ * ID 空间按步长 B 切成连续的块，第 n 块属于 n mod K 号分片：每个分片行每次把 max_id 加 K * B，
+ * 得到的 (max_id - B, max_id) 就是属于它的下一块。各分片的块互不相交，同一分片内的块由行锁保证不重复，
+ * 因此 ID 全局唯一，且整体仍随时间递增（同一时刻各节点发出的 ID 交错分布在相邻的块中）。
+ * <p>
+ * 分片行在第一次使用时创建：先把原来的 tag 行推进一个步长作为栅栏，取其 max_id 向上对齐到 K * B 的整数倍，
+ * 各分片行从对齐后的位置开始，保证不会与分片前已发放的 ID 重复；对齐后多个节点并发创建也不会相交。
+ * 分片数与步长一旦使用就不能再修改，开启分片后所有节点都必须使用相同的配置。
+ * <p>
+ * 每个节点按节点标识的哈希选择首选分片；申请失败时依次尝试其他分片，
+ * 耗时超过 contentionThreshold 时下次改用下一个分片，把竞争分散到其他行上
+ *
+ * @author wenziyue
+ */
+@Slf4j
+public class ShardedSegmentIdDao implements SegmentIdDao {
+
+    /**
+     * 分片行 biz_tag 的分隔符
+     */
+    public static final String SHARD_SEPARATOR = "#";
+
+    private final SegmentIdDao delegate;
+
+    private final Set<String> shardedTags;
+
+    private final int shards;
+
+    /**
+     * 块大小，即配置的步长
+     */
+    private final int blockSize;
+
+    private final long contentionThresholdNanos;
+
+    /**
+     * 节点标识，用于选择首选分片
+     */
+    private final String nodeName = ManagementFactory.getRuntimeMXBean().getName();
+
+    /**
+     * 每个 tag 当前首选的分片
+     */
+    private final Map<String, Integer> preferredShards = new ConcurrentHashMap<>();
+
+    /**
+     * 本进程已确认分片行存在的 tag
+     */
+    private final Set<String> initializedTags = ConcurrentHashMap.newKeySet();
+
+    public ShardedSegmentIdDao(SegmentIdDao delegate, UidGeneratorProperties properties) {
+        if (!delegate.supportsCreateTag()) {
+            // 分片行在 tag 首次申请号段时才创建，不在启动时检查就要等到第一个请求才失败
+            throw new IllegalStateException(delegate.getClass().getName() + " 不支持 createTag，不能开启 wenziyue.uid.sharding");
+        }
+        this.delegate = delegate;
+        this.shardedTags = new HashSet<>(properties.getSharding().getTags());
+        this.shards = properties.getSharding().getShards();
+        this.blockSize = properties.getStep();
+        this.contentionThresholdNanos = properties.getSharding().getContentionThreshold().toNanos();
+    }
+
+    @Override
+    public long nextMaxId(String bizTag, int step) {
+        return nextMaxId(bizTag, step, 0);
+    }
+
+    /**
+     * 分片 tag 的下限向上对齐到 K * B 的整数倍再加上分片偏移，保证抬升后各分片的块仍互不相交
+     */
+    @Override
+    public long nextMaxId(String bizTag, int step, long floor) {
+        if (!shardedTags.contains(bizTag)) {
+            return delegate.nextMaxId(bizTag, step, floor);
+        }
+        if (step > blockSize) {
+            throw new IllegalArgumentException("分片 tag " + bizTag + " 单次申请的步长不能超过 " + blockSize);
+        }
+        initShards(bizTag);
+        int preferred = preferredShards.computeIfAbsent(bizTag, tag -> Math.floorMod((nodeName + tag).hashCode(), shards));
+        RuntimeException failure = null;
+        for (int i = 0; i < shards; i++) {
+            int shard = (preferred + i) % shards;
+            long begin = System.nanoTime();
+            try {
+                long maxId = delegate.nextMaxId(shardTag(bizTag, shard), shards * blockSize, shardFloor(floor, shard));
+                if (i > 0 || System.nanoTime() - begin > contentionThresholdNanos) {
+                    // 首选分片失败或竞争激烈，下次从下一个分片开始
+                    preferredShards.put(bizTag, (shard + 1) % shards);
+                }
+                return maxId;
+            } catch (RuntimeException e) {
+                log.warn("[Segment UID] 分片 {} 申请号段失败，尝试下一个分片：{}", shardTag(bizTag, shard), e.getMessage());
+                failure = e;
+            }
+        }
+        throw failure;
+    }
+
+    @Override
+    public boolean supportsFloor() {
+        return delegate.supportsFloor();
+    }
+
+    /**
+     * 分片 tag 只能按块申请，发号器不会为它申请专用区间
+     */
+    @Override
+    public long allocateRange(String bizTag, int count, long floor) {
+        if (shardedTags.contains(bizTag)) {
+            throw new IllegalArgumentException("分片 tag " + bizTag + " 不支持申请专用区间");
+        }
+        return delegate.allocateRange(bizTag, count, floor);
+    }
+
+    @Override
+    public Map<String, Long> nextMaxIds(Map<String, Integer> steps) {
+        return nextMaxIds(steps, 0);
+    }
+
+    @Override
+    public Map<String, Long> nextMaxIds(Map<String, Integer> steps, long floor) {
+        Map<String, Integer> plain = new LinkedHashMap<>();
+        Map<String, Long> maxIds = new LinkedHashMap<>();
+        steps.forEach((bizTag, step) -> {
+            if (shardedTags.contains(bizTag)) {
+                maxIds.put(bizTag, nextMaxId(bizTag, step, floor));
+            } else {
+                plain.put(bizTag, step);
+            }
+        });
+        if (!plain.isEmpty()) {
+            maxIds.putAll(delegate.nextMaxIds(plain, floor));
+        }
+        return maxIds;
+    }
+
+    @Override
+    public List<String> getAllTags() {
+        return delegate.getAllTags().stream().filter(tag -> !isShardRow(tag)).collect(Collectors.toList());
+    }
+
+    @Override
+    public Map<String, Long> getTagsUpdatedSince(long sinceMillis) {
+        Map<String, Long> tags = new LinkedHashMap<>();
+        delegate.getTagsUpdatedSince(sinceMillis).forEach((tag, updateTime) -> {
+            if (!isShardRow(tag)) {
+                tags.put(tag, updateTime);
+            }
+        });
+        return tags;
+    }
+
+    @Override
+    public boolean existsTag(String bizTag) {
+        return delegate.existsTag(bizTag);
+    }
+
+    @Override
+    public boolean createTag(String bizTag, long maxId, int step) {
+        return delegate.createTag(bizTag, maxId, step);
+    }
+
+    @Override
+    public boolean supportsCreateTag() {
+        return delegate.supportsCreateTag();
+    }
+
+    /**
+     * 确认 tag 的分片行都已存在，不存在时按对齐后的起点创建。
+     * 分片行按编号顺序创建，最后一行存在即说明全部存在
+     *
+     * @param bizTag 业务标签
+     */
+    private void initShards(String bizTag) {
+        if (initializedTags.contains(bizTag)) {
+            return;
+        }
+        synchronized (this) {
+            if (initializedTags.contains(bizTag)) {
+                return;
+            }
+            if (!delegate.existsTag(shardTag(bizTag, shards - 1))) {
+                // 推进原 tag 行作为栅栏，分片之后的 ID 都大于分片前发放过的 ID
+                long fence = delegate.nextMaxId(bizTag, blockSize);
+                long round = (long) shards * blockSize;
+                long base = (fence + round - 1) / round * round;
+                int created = 0;
+                for (int shard = 0; shard < shards; shard++) {
+                    if (delegate.createTag(shardTag(bizTag, shard), base + (long) shard * blockSize, shards * blockSize)) {
+                        created++;
+                    }
+                }
+                log.info("[Segment UID] 初始化分片，bizTag：{}，分片数：{}，起点：{}，本节点创建 {} 行", bizTag, shards, base, created);
+            }
+            initializedTags.add(bizTag);
+        }
+    }
+
+    private long shardFloor(long floor, int shard) {
+        if (floor <= 0) {
+            return 0;
+        }
+        long round = (long) shards * blockSize;
+        return (floor + round - 1) / round * round + (long) shard * blockSize;
+    }
+
+    private boolean isShardRow(String tag) {
+        int index = tag.lastIndexOf(SHARD_SEPARATOR);
+        return index > 0 && shardedTags.contains(tag.substring(0, index));
+    }
+
+    private static String shardTag(String bizTag, int shard) {
+        return bizTag + SHARD_SEPARATOR + shard;
+    }
+}
@@ -0,0 +1,178 @@
+package com.wenziyue.uid.snowflake;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.util.concurrent.TimeUnit;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * 通过 leaf_worker 表为 Snowflake 节点分配节点号：节点号 = leaf_worker.id - 1（0 ~ 1023）
+ * - 同一 host:port 重启时复用自己原来的行；
+ * - 否则优先接管超过 leaseTimeout 没有心跳的行；
+ * - 都没有时插入新行，id 超出 1024 时分配失败。
+ * 分配成功后由调用方定期 heartbeat 刷新 update_time 续约。
+ * 上一任持有者在最后一次心跳（update_time）之后最多还会发号一个心跳间隔，
+ * 复用或接管已有行前要求当前时间晚于 update_time + heartbeatIntervalMillis，否则新发的号可能与之前的 ID 重复：
+ * 本机时钟早于 update_time 超过 maxClockWaitMillis 时说明发生了时钟回拨，拒绝启动；否则等待到该时间之后再启用
+ *
+ * @author wenziyue
+ */
+@Slf4j
+public class LeafWorkerIdAssigner {
+
+    /** 固定表名，不再做配置 */
+    private static final String TABLE = "leaf_worker";
+
+    /**
+     * leaf_worker.type：Snowflake 节点
+     */
+    private static final int TYPE_SNOWFLAKE = 1;
+
+    private final JdbcTemplate jdbc;
+    private final String hostName;
+    private final String port;
+
+    private volatile long rowId = -1;
+
+    public LeafWorkerIdAssigner(JdbcTemplate jdbc, String hostName, String port) {
+        this.jdbc = jdbc;
+        this.hostName = hostName;
+        this.port = port;
+    }
+
+    /**
+     * 分配节点号，时钟落后于已有行的 update_time 时直接拒绝
+     *
+     * @param leaseTimeoutMillis 超过该时长没有心跳的行可被接管
+     * @param maxNodeId          最大节点号
+     * @return 节点号
+     */
+    public long assign(long leaseTimeoutMillis, long maxNodeId) {
+        return assign(leaseTimeoutMillis, maxNodeId, 0, 0);
+    }
+
+    /**
+     * 分配节点号
+     *
+     * @param leaseTimeoutMillis 超过该时长没有心跳的行可被接管
+     * @param maxNodeId          最大节点号
+     * @param maxClockWaitMillis      当前时间早于已有行的 update_time 时最多等待的毫秒数，超过则拒绝启动
+     * @param heartbeatIntervalMillis 心跳间隔，上一任持有者在最后一次心跳之后最多还会发号这么久
+     * @return 节点号
+     * @throws IllegalStateException 节点号已用完，或时钟落后于已有行的 update_time 超过 maxClockWaitMillis
+     */
+    public long assign(long leaseTimeoutMillis, long maxNodeId, long maxClockWaitMillis, long heartbeatIntervalMillis) {
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+
+        // 1. 自己以前用过的行
+        List<long[]> own = jdbc.query(
+                "SELECT id, update_time FROM " + TABLE + " WHERE host_name = ? AND port = ? AND type = ? ORDER BY id",
+                (rs, rowNum) -> new long[]{rs.getLong(1), rs.getTimestamp(2).getTime()},
+                hostName, port, TYPE_SNOWFLAKE);
+        for (long[] row : own) {
+            long id = row[0];
+            if (id - 1 <= maxNodeId) {
+                Timestamp launchDate = awaitClockPassed(id, row[1], maxClockWaitMillis, heartbeatIntervalMillis);
+                jdbc.update("UPDATE " + TABLE + " SET launch_date = ?, update_time = ? WHERE id = ?", launchDate, launchDate, id);
+                return assigned(id, "复用");
+            }
+        }
+
+        // 2. 接管租约已过期的行，用 update_time 做乐观锁，防止两个节点同时接管同一行
+        Timestamp expired = new Timestamp(now.getTime() - leaseTimeoutMillis);
+        List<long[]> candidates = jdbc.query(
+                "SELECT id, update_time FROM " + TABLE + " WHERE type = ? AND id <= ? AND update_time < ? ORDER BY update_time",
+                (rs, rowNum) -> new long[]{rs.getLong(1), rs.getTimestamp(2).getTime()},
+                TYPE_SNOWFLAKE, maxNodeId + 1, expired);
+        for (long[] row : candidates) {
+            long id = row[0];
+            Timestamp launchDate = awaitClockPassed(id, row[1], maxClockWaitMillis, heartbeatIntervalMillis);
+            int updated = jdbc.update(
+                    "UPDATE " + TABLE + " SET host_name = ?, port = ?, launch_date = ?, update_time = ? WHERE id = ? AND update_time < ?",
+                    hostName, port, launchDate, launchDate, id, expired);
+            if (updated == 1) {
+                return assigned(id, "接管过期");
+            }
+        }
+
+        // 3. 新插入一行
+        KeyHolder keyHolder = new GeneratedKeyHolder();
+        jdbc.update(con -> {
+            PreparedStatement ps = con.prepareStatement(
+                    "INSERT INTO " + TABLE + " (host_name, port, type, launch_date, update_time) VALUES (?, ?, ?, ?, ?)",
+                    new String[]{"id"});
+            ps.setString(1, hostName);
+            ps.setString(2, port);
+            ps.setInt(3, TYPE_SNOWFLAKE);
+            ps.setTimestamp(4, now);
+            ps.setTimestamp(5, now);
+            return ps;
+        }, keyHolder);
+        long id = Objects.requireNonNull(keyHolder.getKey(), "leaf_worker 未返回自增 id").longValue();
+        if (id - 1 > maxNodeId) {
+            jdbc.update("DELETE FROM " + TABLE + " WHERE id = ?", id);
+            throw new IllegalStateException("leaf_worker 节点号已用完（最大 " + maxNodeId + "），请清理长期不用的节点");
+        }
+        return assigned(id, "新增");
+    }
+
+    /**
+     * 续约：刷新 update_time
+     *
+     * @return 是否续约成功（行被其他节点接管时返回 false）
+     */
+    public boolean heartbeat() {
+        long id = rowId;
+        if (id < 0) {
+            return false;
+        }
+        return jdbc.update("UPDATE " + TABLE + " SET update_time = ? WHERE id = ? AND host_name = ? AND port = ?",
+                new Timestamp(System.currentTimeMillis()), id, hostName, port) == 1;
+    }
+
+    /**
+     * 等待当前时间晚于 lastUpdateMillis + heartbeatIntervalMillis，该行之前发出的 ID 的时间戳都不会晚于这个时间
+     *
+     * @return 等待结束后的当前时间
+     */
+    private Timestamp awaitClockPassed(long id, long lastUpdateMillis, long maxClockWaitMillis, long heartbeatIntervalMillis) {
+        long now = System.currentTimeMillis();
+        long issuedUntil = lastUpdateMillis + heartbeatIntervalMillis;
+        if (now > issuedUntil) {
+            return new Timestamp(now);
+        }
+        // 心跳间隔内的等待是正常的（例如快速重启），只有早于 update_time 的部分才算时钟回拨
+        long behind = lastUpdateMillis - now;
+        if (behind > maxClockWaitMillis) {
+            throw new IllegalStateException("当前时间比 leaf_worker(id=" + id + ") 记录的 update_time 早 " + behind
+                    + "ms，超过允许等待的 " + maxClockWaitMillis + "ms，可能发生了时钟回拨，拒绝启动以免产生重复 ID");
+        }
+        if (behind >= 0) {
+            log.warn("[Snowflake UID] 当前时间比 leaf_worker(id={}) 记录的 update_time 早 {}ms，等待时钟追上", id, behind);
+        } else {
+            log.info("[Snowflake UID] leaf_worker(id={}) 的上一任持有者可能仍在发号，等待 {}ms 后启用", id, issuedUntil - now + 1);
+        }
+        try {
+            while (now <= issuedUntil) {
+                TimeUnit.MILLISECONDS.sleep(issuedUntil - now + 1);
+                now = System.currentTimeMillis();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("等待 leaf_worker(id=" + id + ") 的上一任持有者停止发号时被中断", e);
+        }
+        return new Timestamp(now);
+    }
+
+    private long assigned(long id, String how) {
+        rowId = id;
+        log.info("[Snowflake UID] {} leaf_worker 节点号成功，host={}, port={}, nodeId={}", how, hostName, port, id - 1);
+        return id - 1;
+    }
+}
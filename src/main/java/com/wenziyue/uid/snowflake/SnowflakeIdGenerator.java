@@ -0,0 +1,186 @@
+package com.wenziyue.uid.snowflake;
+
+import com.wenziyue.uid.common.IdGenException;
+import com.wenziyue.uid.common.Result;
+import com.wenziyue.uid.common.Status;
+import com.wenziyue.uid.core.IdGen;
+import com.wenziyue.uid.properties.UidGeneratorProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Snowflake 模式的 ID 生成器：41 位时间戳 + 10 位节点号 + 12 位序列号，发号不访问数据库
+ * - 节点号手动配置（datacenterId + workerId），或启动时通过 leaf_worker 自动分配并定期续约；
+ * - 上次的时间戳和序列号打包在一个 AtomicLong 中，CAS 推进，无锁；
+ * - 时钟小幅回拨（不超过 maxBackwardMillis）时沿用上次的时间戳继续发号，回拨过大返回异常码。
+ * 业务标签对 Snowflake 没有意义，nextId(bizTag) 与 nextId() 等价
+ *
+ * @author wenziyue
+ */
+@Slf4j
+public class SnowflakeIdGenerator implements IdGen {
+
+    private static final long SEQUENCE_BITS = 12L;
+    private static final long NODE_ID_BITS = 10L;
+    private static final long WORKER_ID_BITS = 5L;
+    private static final long SEQUENCE_MASK = ~(-1L << SEQUENCE_BITS);
+    private static final long MAX_NODE_ID = ~(-1L << NODE_ID_BITS);
+    private static final long TIMESTAMP_SHIFT = SEQUENCE_BITS + NODE_ID_BITS;
+
+    /**
+     * 未初始化成功时的异常码，与 Segment 模式保持一致
+     */
+    private static final long EXCEPTION_ID_IDCACHE_INIT_FALSE = -1;
+    /**
+     * 时钟回拨超过 maxBackwardMillis 时的异常码
+     */
+    private static final long EXCEPTION_ID_CLOCK_BACKWARDS = -4;
+    /**
+     * 自动分配的节点号续约失败、租约已过期时的异常码（节点号可能已被其他节点接管）
+     */
+    private static final long EXCEPTION_ID_WORKER_LEASE_EXPIRED = -5;
+
+    private final UidGeneratorProperties properties;
+    private final LeafWorkerIdAssigner workerIdAssigner;
+    private final ScheduledExecutorService scheduler;
+
+    private final AtomicBoolean initOk = new AtomicBoolean(false);
+
+    /**
+     * 上一次发号的 (时间戳 << 12 | 序列号)
+     */
+    private final AtomicLong state = new AtomicLong(0);
+
+    private volatile long nodeId;
+
+    /**
+     * 自动分配节点号时租约的到期时间（毫秒），手动配置时为 Long.MAX_VALUE
+     */
+    private volatile long leaseDeadline = Long.MAX_VALUE;
+
+    public SnowflakeIdGenerator(UidGeneratorProperties properties,
+                                LeafWorkerIdAssigner workerIdAssigner,
+                                ScheduledExecutorService scheduler) {
+        this.properties = properties;
+        this.workerIdAssigner = workerIdAssigner;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * 启动完成后分配节点号
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void initOnBoot() {
+        if (!initOk.get()) {
+            this.init();
+        }
+    }
+
+    @Override
+    public synchronized boolean init() {
+        if (initOk.get()) {
+            return true;
+        }
+        if (properties.getWorkerId() >= 0) {
+            nodeId = (properties.getDatacenterId() << WORKER_ID_BITS) | properties.getWorkerId();
+            log.info("[Snowflake UID] 使用配置的节点号，datacenterId={}, workerId={}", properties.getDatacenterId(), properties.getWorkerId());
+        } else {
+            UidGeneratorProperties.Snowflake snowflake = properties.getSnowflake();
+            long leaseTimeout = snowflake.getLeaseTimeout().toMillis();
+            long interval = snowflake.getHeartbeatInterval().toMillis();
+            nodeId = workerIdAssigner.assign(leaseTimeout, MAX_NODE_ID, snowflake.getMaxClockWait().toMillis(), interval);
+            leaseDeadline = System.currentTimeMillis() + leaseTimeout;
+            scheduler.scheduleWithFixedDelay(() -> heartbeat(leaseTimeout), interval, interval, TimeUnit.MILLISECONDS);
+        }
+        initOk.set(true);
+        return true;
+    }
+
+    @Override
+    public Result nextId() {
+        try {
+            return new Result(nextLongId(), Status.SUCCESS);
+        } catch (IdGenException e) {
+            return new Result(e.getCode(), Status.EXCEPTION);
+        }
+    }
+
+    @Override
+    public Result nextId(String bizTag) {
+        return nextId();
+    }
+
+    /**
+     * 成功路径不创建任何对象，失败时抛出 IdGenException（-1、-4、-5）
+     */
+    @Override
+    public long nextLongId() {
+        if (!initOk.get()) {
+            try {
+                init();
+            } catch (Exception e) {
+                log.error("[Snowflake UID] 初始化失败", e);
+                throw new IdGenException(EXCEPTION_ID_IDCACHE_INIT_FALSE, "Snowflake 初始化失败", e);
+            }
+        }
+        long epoch = properties.getSnowflake().getEpoch();
+        while (true) {
+            // 先读 state 再读时钟，保证正常情况下 now 不会早于 state 中的时间戳，避免误判回拨
+            long last = state.get();
+            long now = System.currentTimeMillis();
+            if (now > leaseDeadline) {
+                log.error("[Snowflake UID] leaf_worker 租约已过期，nodeId={}", nodeId);
+                throw new IdGenException(EXCEPTION_ID_WORKER_LEASE_EXPIRED, "leaf_worker 租约已过期, nodeId=" + nodeId);
+            }
+            long lastTimestamp = last >>> SEQUENCE_BITS;
+            long timestamp = now - epoch;
+            long next;
+            if (timestamp > lastTimestamp) {
+                next = timestamp << SEQUENCE_BITS;
+            } else {
+                if (lastTimestamp - timestamp > properties.getSnowflake().getMaxBackwardMillis()) {
+                    log.error("[Snowflake UID] 时钟回拨 {}ms，超过阈值 {}ms", lastTimestamp - timestamp, properties.getSnowflake().getMaxBackwardMillis());
+                    throw new IdGenException(EXCEPTION_ID_CLOCK_BACKWARDS, "时钟回拨 " + (lastTimestamp - timestamp) + "ms");
+                }
+                // 同一毫秒内或小幅回拨：沿用上次的时间戳，序列号用完则等下一毫秒
+                if ((last & SEQUENCE_MASK) == SEQUENCE_MASK) {
+                    Thread.yield();
+                    continue;
+                }
+                next = last + 1;
+            }
+            if (state.compareAndSet(last, next)) {
+                return ((next >>> SEQUENCE_BITS) << TIMESTAMP_SHIFT)
+                        | (nodeId << SEQUENCE_BITS)
+                        | (next & SEQUENCE_MASK);
+            }
+        }
+    }
+
+    @Override
+    public long nextLongId(String bizTag) {
+        return nextLongId();
+    }
+
+    private void heartbeat(long leaseTimeout) {
+        try {
+            if (workerIdAssigner.heartbeat()) {
+                leaseDeadline = System.currentTimeMillis() + leaseTimeout;
+            } else {
+                leaseDeadline = 0;
+                log.error("[Snowflake UID] leaf_worker 续约失败，节点号可能已被其他节点接管，停止发号，nodeId={}", nodeId);
+            }
+        } catch (Exception e) {
+            log.warn("[Snowflake UID] leaf_worker 心跳异常，nodeId={}", nodeId, e);
+        }
+    }
+}
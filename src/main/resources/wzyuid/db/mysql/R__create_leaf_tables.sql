@@ -7,7 +7,7 @@ CREATE TABLE IF NOT EXISTS leaf_alloc (
     PRIMARY KEY (biz_tag)
     ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
 
--- 节点表，可选（我们先不用雪花，但预留）
+-- 节点表，snowflake 模式下用于自动分配节点号（节点号 = id - 1）
 CREATE TABLE IF NOT EXISTS leaf_worker (
                                            id             BIGINT AUTO_INCREMENT PRIMARY KEY,
                                            host_name      VARCHAR(64)  NOT NULL,
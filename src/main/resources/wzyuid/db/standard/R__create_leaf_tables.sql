@@ -0,0 +1,19 @@
+-- 号段表（标准 SQL，适用于 H2 / PostgreSQL 等）
+-- update_time 只在插入时取默认值，新 tag 的增量刷新依赖它；申请号段不会更新该列
+CREATE TABLE IF NOT EXISTS leaf_alloc (
+    biz_tag        VARCHAR(128)  NOT NULL,
+    max_id         BIGINT        NOT NULL,
+    step           INT           NOT NULL DEFAULT 1000,
+    update_time    TIMESTAMP     NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    PRIMARY KEY (biz_tag)
+);
+
+-- 节点表，snowflake 模式下用于自动分配节点号（节点号 = id - 1），update_time 由程序写入
+CREATE TABLE IF NOT EXISTS leaf_worker (
+    id             BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    host_name      VARCHAR(64)   NOT NULL,
+    port           VARCHAR(16)   NOT NULL,
+    type           SMALLINT      NOT NULL,
+    launch_date    TIMESTAMP     NOT NULL,
+    update_time    TIMESTAMP     NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
@@ -0,0 +1,82 @@
+package com.wenziyue.uid.config;
+
+import com.wenziyue.uid.segment.R2dbcSegmentIdDao;
+import com.wenziyue.uid.segment.SegmentIdDao;
+import com.wenziyue.uid.segment.SegmentIdDaoImpl;
+import com.wenziyue.uid.segment.SegmentIdGeneratorImpl;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration;
+import org.springframework.boot.autoconfigure.jdbc.JdbcTemplateAutoConfiguration;
+import org.springframework.boot.autoconfigure.r2dbc.R2dbcAutoConfiguration;
+import org.springframework.boot.test.context.FilteredClassLoader;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import javax.sql.DataSource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class WenziyueUidAutoConfigurationTest {
+
+    private final ApplicationContextRunner runner = new ApplicationContextRunner()
+            .withConfiguration(AutoConfigurations.of(
+                    DataSourceAutoConfiguration.class,
+                    JdbcTemplateAutoConfiguration.class,
+                    R2dbcAutoConfiguration.class,
+                    WenziyueUidAutoConfiguration.class));
+
+    @Test
+    void r2dbcOnlyServiceWithoutSpringJdbcUsesR2dbcDao() {
+        runner.withClassLoader(new FilteredClassLoader("org.springframework.jdbc"))
+                .withPropertyValues("spring.r2dbc.url=r2dbc:h2:mem:///r2dbc-only")
+                .run(context -> {
+                    assertThat(context).hasNotFailed();
+                    assertThat(context).getBean(SegmentIdDao.class).isInstanceOf(R2dbcSegmentIdDao.class);
+                });
+    }
+
+    @Test
+    void embeddedDataSourceDoesNotWinOverConfiguredR2dbc() {
+        // H2 与 spring-jdbc 都在 classpath 上时也不能用内嵌 DataSource 代替配置的 R2DBC 业务库
+        runner.withPropertyValues("spring.r2dbc.url=r2dbc:h2:mem:///r2dbc-embedded")
+                .run(context -> {
+                    assertThat(context).hasNotFailed();
+                    assertThat(context).doesNotHaveBean(DataSource.class);
+                    assertThat(context).getBean(SegmentIdDao.class).isInstanceOf(R2dbcSegmentIdDao.class);
+                });
+    }
+
+    @Test
+    void applicationDataSourceTakesPrecedenceOverR2dbc() {
+        runner.withBean(DataSource.class, () -> new DriverManagerDataSource("jdbc:h2:mem:jdbc-configured;DB_CLOSE_DELAY=-1"))
+                .withPropertyValues("spring.r2dbc.url=r2dbc:h2:mem:///jdbc-configured")
+                .run(context -> {
+                    assertThat(context).hasNotFailed();
+                    assertThat(context).getBean(SegmentIdDao.class).isInstanceOf(SegmentIdDaoImpl.class);
+                });
+    }
+
+    @Test
+    void prefetchExecutorKeepsThreadPoolTaskExecutorType() {
+        // 按类型注入 ThreadPoolTaskExecutor 的已有代码不受虚拟线程选项影响
+        runner.withBean(DataSource.class, () -> new DriverManagerDataSource("jdbc:h2:mem:executor;DB_CLOSE_DELAY=-1"))
+                .run(context -> {
+                    assertThat(context).hasNotFailed();
+                    assertThat(context).getBean("segmentUidTaskExecutor").isInstanceOf(ThreadPoolTaskExecutor.class);
+                    assertThat(context).hasSingleBean(ThreadPoolTaskExecutor.class);
+                });
+    }
+
+    @Test
+    void virtualThreadExecutorIsRegisteredUnderSameName() {
+        runner.withBean(DataSource.class, () -> new DriverManagerDataSource("jdbc:h2:mem:virtual;DB_CLOSE_DELAY=-1"))
+                .withPropertyValues("wenziyue.uid.prefetch-executor.virtual-threads=true")
+                .run(context -> {
+                    assertThat(context).hasNotFailed();
+                    assertThat(context).hasBean("segmentUidTaskExecutor");
+                    assertThat(context).hasSingleBean(SegmentIdGeneratorImpl.class);
+                });
+    }
+}
@@ -0,0 +1,100 @@
+package com.wenziyue.uid.segment;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * 号段文件启动回放：末尾残缺的记录截断，中间损坏拒绝启动
+ */
+class FileSegmentIdDaoTest {
+
+    /**
+     * tag 为 "order" 时一条记录的长度：header 8 + tagLength 2 + tag 5 + maxId 8 + step 4 + updateTime 8
+     */
+    private static final int RECORD_SIZE = 35;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void replaysLatestMaxIds() throws IOException {
+        Path file = dir.resolve("segments.log");
+        writeRecords(file, 3);
+
+        try (FileSegmentIdDao dao = new FileSegmentIdDao(file, 1000)) {
+            assertEquals(400, dao.nextMaxId("order", 100));
+        }
+    }
+
+    @Test
+    void truncatesTornTail() throws IOException {
+        Path file = dir.resolve("segments.log");
+        writeRecords(file, 3);
+        byte[] intact = Files.readAllBytes(file);
+        // 进程在写第 4 条记录时崩溃：只写了一半
+        Files.write(file, Arrays.copyOf(intact, RECORD_SIZE / 2), StandardOpenOption.APPEND);
+
+        try (FileSegmentIdDao dao = new FileSegmentIdDao(file, 1000)) {
+            assertArrayEquals(intact, Files.readAllBytes(file));
+            assertEquals(400, dao.nextMaxId("order", 100));
+        }
+    }
+
+    @Test
+    void truncatesCorruptLastRecord() throws IOException {
+        Path file = dir.resolve("segments.log");
+        writeRecords(file, 3);
+        flipByte(file, 2 * RECORD_SIZE + 20);
+
+        try (FileSegmentIdDao dao = new FileSegmentIdDao(file, 1000)) {
+            assertEquals(2 * RECORD_SIZE, Files.size(file));
+            assertEquals(300, dao.nextMaxId("order", 100));
+        }
+    }
+
+    @Test
+    void refusesToStartWhenValidRecordsFollowCorruption() throws IOException {
+        Path file = dir.resolve("segments.log");
+        writeRecords(file, 3);
+        flipByte(file, RECORD_SIZE + 20);
+        byte[] corrupt = Files.readAllBytes(file);
+
+        assertThrows(IllegalStateException.class, () -> new FileSegmentIdDao(file, 1000));
+        // 文件保持原样，等待人工处理
+        assertArrayEquals(corrupt, Files.readAllBytes(file));
+
+        // 启动失败时已释放文件锁，修复后可以重新打开
+        flipByte(file, RECORD_SIZE + 20);
+        try (FileSegmentIdDao dao = new FileSegmentIdDao(file, 1000)) {
+            assertEquals(400, dao.nextMaxId("order", 100));
+        }
+    }
+
+    /**
+     * 写入 count 条 order 记录，max_id 依次为 100、200 ...
+     */
+    private static void writeRecords(Path file, int count) throws IOException {
+        try (FileSegmentIdDao dao = new FileSegmentIdDao(file, 1000)) {
+            for (int i = 0; i < count; i++) {
+                dao.nextMaxId("order", 100);
+            }
+        }
+        assertEquals((long) count * RECORD_SIZE, Files.size(file));
+    }
+
+    private static void flipByte(Path file, int offset) throws IOException {
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[offset] ^= 0x5A;
+        Files.write(file, bytes);
+    }
+}
@@ -0,0 +1,76 @@
+package com.wenziyue.uid.segment;
+
+import com.wenziyue.uid.properties.UidGeneratorProperties;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SegmentCircuitBreakerTest {
+
+    private final UidGeneratorProperties.CircuitBreaker config = new UidGeneratorProperties.CircuitBreaker();
+
+    @Test
+    void failuresOfOneTagDoNotOpenOthers() {
+        config.setMinimumCalls(2);
+        SegmentCircuitBreaker breaker = new SegmentCircuitBreaker(config);
+
+        fail(breaker, "a", 2);
+        assertTrue(breaker.isOpen("a"));
+        assertFalse(breaker.tryAcquire("a"));
+
+        assertFalse(breaker.isOpen("b"));
+        assertTrue(breaker.tryAcquire("b"));
+    }
+
+    @Test
+    void staysClosedBelowFailureRate() {
+        config.setMinimumCalls(4);
+        config.setFailureRateThreshold(50);
+        SegmentCircuitBreaker breaker = new SegmentCircuitBreaker(config);
+
+        for (int i = 0; i < 3; i++) {
+            assertTrue(breaker.tryAcquire("a"));
+            breaker.onSuccess("a");
+        }
+        fail(breaker, "a", 1);
+        assertFalse(breaker.isOpen("a"));
+    }
+
+    @Test
+    void failuresOutsideWindowAreForgotten() throws InterruptedException {
+        config.setMinimumCalls(2);
+        config.setWindow(Duration.ofMillis(50));
+        SegmentCircuitBreaker breaker = new SegmentCircuitBreaker(config);
+
+        fail(breaker, "a", 1);
+        Thread.sleep(100);
+        fail(breaker, "a", 1);
+        assertFalse(breaker.isOpen("a"));
+    }
+
+    @Test
+    void letsOneProbeThroughAfterBackoff() throws InterruptedException {
+        config.setMinimumCalls(1);
+        config.setInitialBackoff(Duration.ofMillis(50));
+        SegmentCircuitBreaker breaker = new SegmentCircuitBreaker(config);
+        fail(breaker, "a", 1);
+        assertFalse(breaker.tryAcquire("a"));
+
+        Thread.sleep(100);
+        assertTrue(breaker.tryAcquire("a"));
+        assertFalse(breaker.tryAcquire("a"));
+        breaker.onSuccess("a");
+        assertFalse(breaker.isOpen("a"));
+        assertTrue(breaker.tryAcquire("a"));
+    }
+
+    private static void fail(SegmentCircuitBreaker breaker, String bizTag, int times) {
+        for (int i = 0; i < times; i++) {
+            assertTrue(breaker.tryAcquire(bizTag));
+            breaker.onFailure(bizTag);
+        }
+    }
+}
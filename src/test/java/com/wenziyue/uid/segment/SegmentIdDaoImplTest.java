@@ -0,0 +1,120 @@
+package com.wenziyue.uid.segment;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 在内嵌 H2 上使用 starter 自带的标准建表脚本（wzyuid/db/standard）验证 SegmentIdDaoImpl
+ */
+class SegmentIdDaoImplTest {
+
+    private JdbcTemplate jdbc;
+
+    private SegmentIdDaoImpl dao;
+
+    @BeforeEach
+    void setUp() {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(
+                "jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+        new ResourceDatabasePopulator(new ClassPathResource("wzyuid/db/standard/R__create_leaf_tables.sql")).execute(dataSource);
+        jdbc = new JdbcTemplate(dataSource);
+        dao = new SegmentIdDaoImpl(jdbc);
+        jdbc.update("INSERT INTO leaf_alloc (biz_tag, max_id, step) VALUES ('order', 1000, 1000)");
+    }
+
+    @Test
+    void detectsH2Dialect() {
+        String productName = jdbc.execute((ConnectionCallback<String>) con -> con.getMetaData().getDatabaseProductName());
+        assertEquals(SegmentSqlDialect.H2, SegmentSqlDialect.fromProductName(productName));
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = SegmentSqlDialect.class, names = {"H2", "GENERIC"})
+    void nextMaxIdAdvancesMaxIdAndPersistsStep(SegmentSqlDialect dialect) {
+        SegmentIdDaoImpl dao = new SegmentIdDaoImpl(jdbc, dialect);
+        assertEquals(3000, dao.nextMaxId("order", 2000));
+        assertEquals(3000, maxId("order"));
+        assertEquals(2000, step("order"));
+
+        // floor 低于当前 max_id 时不起作用，高于时从 floor 开始
+        assertEquals(3500, dao.nextMaxId("order", 500, 100));
+        assertEquals(20500, dao.nextMaxId("order", 500, 20000));
+        assertEquals(500, step("order"));
+    }
+
+    @Test
+    void nextMaxIdInsertsUnknownTag() {
+        assertFalse(dao.existsTag("user"));
+        assertEquals(500, dao.nextMaxId("user", 500));
+        assertEquals(1000, dao.nextMaxId("user", 500));
+        assertEquals(500, step("user"));
+
+        assertEquals(10100, dao.nextMaxId("pay", 100, 10000));
+        assertTrue(dao.existsTag("pay"));
+    }
+
+    @Test
+    void nextMaxIdsUpdatesAllTagsInOneTransaction() {
+        Map<String, Integer> steps = new HashMap<>();
+        steps.put("order", 100);
+        steps.put("user", 200);
+
+        Map<String, Long> maxIds = dao.nextMaxIds(steps);
+        assertEquals(1100L, maxIds.get("order"));
+        assertEquals(200L, maxIds.get("user"));
+        assertEquals(100, step("order"));
+        assertEquals(200, step("user"));
+
+        maxIds = dao.nextMaxIds(steps, 5000);
+        assertEquals(5100L, maxIds.get("order"));
+        assertEquals(5200L, maxIds.get("user"));
+    }
+
+    @Test
+    void createTagIsIdempotent() {
+        assertTrue(dao.createTag("user", 100, 50));
+        assertFalse(dao.createTag("user", 999, 50));
+        assertEquals(100, maxId("user"));
+        assertTrue(dao.getAllTags().contains("user"));
+        assertTrue(dao.getTagsUpdatedSince(0).containsKey("user"));
+    }
+
+    @Test
+    void allocateRangeKeepsPersistedStep() {
+        assertEquals(51000, dao.allocateRange("order", 50000, 0));
+        assertEquals(51000, maxId("order"));
+        assertEquals(1000, step("order"));
+
+        assertEquals(52000, dao.nextMaxId("order", 1000));
+        assertEquals(1000, step("order"));
+    }
+
+    @Test
+    void allocateRangeRespectsFloor() {
+        assertEquals(10500, dao.allocateRange("order", 500, 10000));
+        assertEquals(1000, step("order"));
+    }
+
+    private long maxId(String bizTag) {
+        return jdbc.queryForObject("SELECT max_id FROM leaf_alloc WHERE biz_tag = ?", Long.class, bizTag);
+    }
+
+    private int step(String bizTag) {
+        return jdbc.queryForObject("SELECT step FROM leaf_alloc WHERE biz_tag = ?", Integer.class, bizTag);
+    }
+}
@@ -0,0 +1,219 @@
+package com.wenziyue.uid.segment;
+
+import com.wenziyue.uid.common.IdGenException;
+import com.wenziyue.uid.common.Result;
+import com.wenziyue.uid.common.Status;
+import com.wenziyue.uid.properties.UidGeneratorProperties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SegmentIdGeneratorImplTest {
+
+    private static final String TAG = "order";
+
+    private final ThreadPoolTaskExecutor taskExecutor = new ThreadPoolTaskExecutor();
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+    @AfterEach
+    void tearDown() {
+        taskExecutor.shutdown();
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    void firstLoadFailureIsReportedAsIdGenException() {
+        FlakyDao dao = new FlakyDao();
+        dao.failing.set(true);
+        SegmentIdGeneratorImpl generator = generator(dao, 100);
+
+        IdGenException e = assertThrows(IdGenException.class, () -> generator.nextLongId(TAG));
+        assertEquals(-3, e.getCode());
+        Result result = generator.nextId(TAG);
+        assertEquals(Status.EXCEPTION, result.getStatus());
+        assertEquals(-3, result.getId());
+        assertEquals(-3, assertThrows(IdGenException.class, () -> generator.nextIds(TAG, 10)).getCode());
+
+        // 数据库恢复后正常发号
+        dao.failing.set(false);
+        assertEquals(1, generator.nextLongId(TAG));
+    }
+
+    @Test
+    void bulkFetchFailureIsReportedAsIdGenException() {
+        FlakyDao dao = new FlakyDao();
+        SegmentIdGeneratorImpl generator = generator(dao, 100);
+        assertEquals(1, generator.nextLongId(TAG));
+
+        dao.failing.set(true);
+        IdGenException e = assertThrows(IdGenException.class, () -> generator.nextIds(TAG, 5000));
+        assertEquals(-3, e.getCode());
+
+        dao.failing.set(false);
+        long[] ids = generator.nextIds(TAG, 5000);
+        assertEquals(5000, ids.length);
+    }
+
+    @Test
+    void nextIdsWithinCurrentSegmentAreContiguous() {
+        SegmentIdGeneratorImpl generator = generator(new FlakyDao(), 100);
+        assertEquals(1, generator.nextLongId(TAG));
+        assertArrayEquals(new long[]{2, 3, 4}, generator.nextIds(TAG, 3));
+    }
+
+    @Test
+    void circuitBreakerDoesNotBlockFirstLoadOrBulkFetch() {
+        FlakyDao dao = new FlakyDao();
+        dao.failing.set(true);
+        UidGeneratorProperties properties = properties(100);
+        properties.getCircuitBreaker().setEnabled(true);
+        properties.getCircuitBreaker().setMinimumCalls(1);
+        properties.getCircuitBreaker().setFailureRateThreshold(1);
+        SegmentIdGeneratorImpl generator = generator(properties, dao);
+
+        for (int i = 0; i < 5; i++) {
+            assertEquals(-3, assertThrows(IdGenException.class, () -> generator.nextLongId(TAG)).getCode());
+        }
+        assertEquals(5, dao.calls.get());
+
+        // 数据库恢复后首段与批量取号立即可用，不等熔断到期
+        dao.failing.set(false);
+        assertEquals(1, generator.nextLongId(TAG));
+        dao.failing.set(true);
+        assertEquals(-3, assertThrows(IdGenException.class, () -> generator.nextIds(TAG, 5000)).getCode());
+        dao.failing.set(false);
+        assertEquals(5000, generator.nextIds(TAG, 5000).length);
+    }
+
+    @Test
+    void evictionSkipsBufferWhilePrefetchIsRunning() throws InterruptedException {
+        FlakyDao dao = new FlakyDao();
+        UidGeneratorProperties properties = properties(10);
+        properties.getEviction().setEnabled(true);
+        properties.getEviction().setIdleTimeout(Duration.ofMillis(1));
+        properties.getEviction().setInterval(Duration.ofMillis(100));
+        SegmentIdGeneratorImpl generator = generator(properties, dao);
+
+        Set<Long> ids = new HashSet<>();
+        ids.add(generator.nextLongId(TAG));
+        // 预加载卡在数据库上，期间淘汰任务不能动这个 buffer
+        CountDownLatch release = new CountDownLatch(1);
+        dao.blocker = release;
+        for (int i = 0; i < 8; i++) {
+            ids.add(generator.nextLongId(TAG));
+        }
+        Thread.sleep(400);
+        assertEquals(0, generator.getEvictions());
+
+        release.countDown();
+        dao.blocker = null;
+        while (generator.getEvictions() == 0) {
+            Thread.sleep(20);
+        }
+        // 淘汰之后改用新的 buffer，前后发出的号不重复
+        for (int i = 0; i < 30; i++) {
+            assertTrue(ids.add(generator.nextLongId(TAG)));
+        }
+    }
+
+    @Test
+    void timeOrderedRequiresDaoWithFloorSupport() {
+        UidGeneratorProperties properties = new UidGeneratorProperties();
+        properties.setBizTag(TAG);
+        properties.getTimeOrdered().setEnabled(true);
+        taskExecutor.initialize();
+        SegmentIdGeneratorImpl generator = new SegmentIdGeneratorImpl(properties, new FlakyDao(), taskExecutor, scheduler);
+        assertThrows(IllegalStateException.class, generator::init);
+    }
+
+    @Test
+    void shardingRequiresDaoWithCreateTagSupport() {
+        UidGeneratorProperties properties = new UidGeneratorProperties();
+        properties.getSharding().setTags(Collections.singletonList(TAG));
+        assertThrows(IllegalStateException.class, () -> new ShardedSegmentIdDao(new FlakyDao(), properties));
+    }
+
+    private SegmentIdGeneratorImpl generator(SegmentIdDao dao, int step) {
+        return generator(properties(step), dao);
+    }
+
+    private UidGeneratorProperties properties(int step) {
+        UidGeneratorProperties properties = new UidGeneratorProperties();
+        properties.setBizTag(TAG);
+        properties.setStep(step);
+        return properties;
+    }
+
+    private SegmentIdGeneratorImpl generator(UidGeneratorProperties properties, SegmentIdDao dao) {
+        taskExecutor.setCorePoolSize(1);
+        taskExecutor.initialize();
+        SegmentIdGeneratorImpl generator = new SegmentIdGeneratorImpl(properties, dao, taskExecutor, scheduler);
+        generator.init();
+        return generator;
+    }
+
+    /**
+     * failing 为 true 时 nextMaxId 抛出 DataAccessException，模拟数据库故障
+     */
+    static class FlakyDao implements SegmentIdDao {
+
+        final AtomicBoolean failing = new AtomicBoolean();
+
+        final AtomicInteger calls = new AtomicInteger();
+
+        final Map<String, AtomicLong> maxIds = new ConcurrentHashMap<>();
+
+        /**
+         * 不为 null 时 nextMaxId 先阻塞到 latch 放行，模拟数据库慢
+         */
+        volatile CountDownLatch blocker;
+
+        FlakyDao() {
+            maxIds.put(TAG, new AtomicLong());
+        }
+
+        @Override
+        public long nextMaxId(String bizTag, int step) {
+            calls.incrementAndGet();
+            CountDownLatch latch = blocker;
+            if (latch != null) {
+                try {
+                    latch.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            if (failing.get()) {
+                throw new DataAccessResourceFailureException("数据库不可用");
+            }
+            return maxIds.computeIfAbsent(bizTag, k -> new AtomicLong()).addAndGet(step);
+        }
+
+        @Override
+        public List<String> getAllTags() {
+            return new ArrayList<>(maxIds.keySet());
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.wenziyue.uid.snowflake;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import java.sql.Timestamp;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 在内嵌 H2 上使用标准建表脚本验证 leaf_worker 节点号分配，重点是重启后时钟回拨的处理
+ */
+class LeafWorkerIdAssignerTest {
+
+    private static final long LEASE_TIMEOUT = 60_000;
+
+    private static final long MAX_NODE_ID = 1023;
+
+    private JdbcTemplate jdbc;
+
+    private LeafWorkerIdAssigner assigner;
+
+    @BeforeEach
+    void setUp() {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(
+                "jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+        new ResourceDatabasePopulator(new ClassPathResource("wzyuid/db/standard/R__create_leaf_tables.sql")).execute(dataSource);
+        jdbc = new JdbcTemplate(dataSource);
+        assigner = new LeafWorkerIdAssigner(jdbc, "host-a", "8080");
+    }
+
+    @Test
+    void reusesOwnRow() {
+        insertWorker("host-a", "8080", System.currentTimeMillis() - 1000);
+        assertEquals(0, assigner.assign(LEASE_TIMEOUT, MAX_NODE_ID, 0, 0));
+    }
+
+    @Test
+    void refusesToReuseOwnRowWhenClockIsFarBehind() {
+        long lastUpdate = System.currentTimeMillis() + 60_000;
+        insertWorker("host-a", "8080", lastUpdate);
+
+        assertThrows(IllegalStateException.class, () -> assigner.assign(LEASE_TIMEOUT, MAX_NODE_ID, 1000, 0));
+        // 拒绝时不能改写原来的 update_time
+        assertEquals(lastUpdate, updateTime(1));
+    }
+
+    @Test
+    void waitsForClockBeforeReusingOwnRow() {
+        long lastUpdate = System.currentTimeMillis() + 200;
+        insertWorker("host-a", "8080", lastUpdate);
+
+        assertEquals(0, assigner.assign(LEASE_TIMEOUT, MAX_NODE_ID, 5000, 0));
+        assertTrue(System.currentTimeMillis() > lastUpdate);
+        assertTrue(updateTime(1) > lastUpdate);
+    }
+
+    @Test
+    void waitsOneHeartbeatIntervalAfterLastHeartbeat() {
+        // 快速重启：上一任进程在最后一次心跳之后还可能发号一个心跳间隔，这段等待不受 maxClockWait 限制
+        long lastUpdate = System.currentTimeMillis() - 100;
+        insertWorker("host-a", "8080", lastUpdate);
+
+        assertEquals(0, assigner.assign(LEASE_TIMEOUT, MAX_NODE_ID, 0, 500));
+        assertTrue(System.currentTimeMillis() > lastUpdate + 500);
+        assertTrue(updateTime(1) > lastUpdate + 500);
+    }
+
+    @Test
+    void takesOverExpiredRowOnlyAfterItsLastHeartbeat() {
+        long lastUpdate = System.currentTimeMillis() - LEASE_TIMEOUT - 1000;
+        insertWorker("host-b", "9090", lastUpdate);
+
+        assertEquals(0, assigner.assign(LEASE_TIMEOUT, MAX_NODE_ID, 0, 0));
+        assertTrue(updateTime(1) > lastUpdate);
+        assertEquals("host-a", jdbc.queryForObject("SELECT host_name FROM leaf_worker WHERE id = 1", String.class));
+    }
+
+    private void insertWorker(String hostName, String port, long updateTime) {
+        Timestamp timestamp = new Timestamp(updateTime);
+        jdbc.update("INSERT INTO leaf_worker (host_name, port, type, launch_date, update_time) VALUES (?, ?, 1, ?, ?)",
+                hostName, port, timestamp, timestamp);
+    }
+
+    private long updateTime(long id) {
+        return jdbc.queryForObject("SELECT update_time FROM leaf_worker WHERE id = ?", Timestamp.class, id).getTime();
+    }
+}
@@ -0,0 +1,101 @@
+package com.wenziyue.uid.benchmark;
+
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 基准测试入口：按 1 ~ 64 的线程数逐档运行，最后汇总吞吐、p99 / p999 和 -3 异常率
+ * <p>
+ * 用法：java -jar target/benchmarks.jar [JMH 命令行参数]，例如
+ * java -jar target/benchmarks.jar -p step=1000 -p daoLatencyMs=5-50
+ * 如果参数里带了 -t，则只按指定线程数跑一轮
+ *
+ * @author wenziyue
+ */
+public class BenchmarkRunner {
+
+    private static final int[] THREADS = {1, 2, 4, 8, 16, 32, 64};
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        CommandLineOptions cmd = new CommandLineOptions(args);
+        List<RunResult> results = new ArrayList<>();
+        if (cmd.getThreads().hasValue()) {
+            results.addAll(new Runner(options(cmd, cmd.getThreads().get())).run());
+        } else {
+            for (int threads : THREADS) {
+                results.addAll(new Runner(options(cmd, threads)).run());
+            }
+        }
+        printSummary(results);
+    }
+
+    private static Options options(CommandLineOptions cmd, int threads) {
+        OptionsBuilder builder = new OptionsBuilder();
+        builder.parent(cmd);
+        if (cmd.getIncludes().isEmpty()) {
+            builder.include(SegmentIdGenBenchmark.class.getSimpleName());
+        }
+        return builder.threads(threads).build();
+    }
+
+    private static void printSummary(Collection<RunResult> results) {
+        System.out.println();
+        System.out.printf("%-8s %-8s %-8s %-10s %-8s %-14s %-12s %-12s %-10s%n",
+                "threads", "step", "percent", "latency", "chunk", "ops/us", "p99(us)", "p999(us)", "-3 rate");
+        for (RunResult run : results) {
+            BenchmarkParams params = run.getParams();
+            Result<?> primary = run.getPrimaryResult();
+            String throughput = "-";
+            String p99 = "-";
+            String p999 = "-";
+            switch (params.getMode()) {
+                case Throughput:
+                    throughput = String.format("%.3f", primary.getScore());
+                    break;
+                case SampleTime:
+                    p99 = String.format("%.3f", primary.getStatistics().getPercentile(99.0));
+                    p999 = String.format("%.3f", primary.getStatistics().getPercentile(99.9));
+                    break;
+                default:
+                    break;
+            }
+            System.out.printf("%-8d %-8s %-8s %-10s %-8s %-14s %-12s %-12s %-10s%n",
+                    params.getThreads(),
+                    params.getParam("step"),
+                    params.getParam("prepareNextPercent"),
+                    params.getParam("daoLatencyMs"),
+                    params.getParam("threadChunkSize"),
+                    throughput, p99, p999,
+                    errorRate(run));
+        }
+    }
+
+    /**
+     * -3 次数 / 总调用次数
+     */
+    private static String errorRate(RunResult run) {
+        // JMH 的 getSecondaryResults() 返回原始类型 Map<String, Result>，取出后直接按 Result<?> 使用
+        Result<?> success = run.getSecondaryResults().get("success");
+        Result<?> twoSegmentsNull = run.getSecondaryResults().get("twoSegmentsNull");
+        Result<?> otherError = run.getSecondaryResults().get("otherError");
+        if (success == null || twoSegmentsNull == null) {
+            return "-";
+        }
+        double total = success.getScore() + twoSegmentsNull.getScore() + (otherError == null ? 0 : otherError.getScore());
+        if (total == 0) {
+            return "-";
+        }
+        return String.format("%.4f%%", twoSegmentsNull.getScore() * 100 / total);
+    }
+}
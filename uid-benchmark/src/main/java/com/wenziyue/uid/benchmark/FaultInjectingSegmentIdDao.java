@@ -0,0 +1,112 @@
+package com.wenziyue.uid.benchmark;
+
+import com.wenziyue.uid.segment.SegmentIdDao;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 向 nextMaxId 注入故障的 SegmentIdDao，供压力测试使用：
+ * - 随机延迟：模拟慢库；
+ * - 申请失败：直接抛异常，max_id 不变；
+ * - 响应丢失：max_id 已经推进，但调用方收到异常（例如提交成功后连接断开），这段号永远不会被使用，但不应导致重复；
+ * - 重复号段：再次返回该 tag 上一次返回的 max_id，模拟数据库回退等外部故障，用于确认唯一性检查能够发现重复
+ *
+ * @author wenziyue
+ */
+public class FaultInjectingSegmentIdDao implements SegmentIdDao {
+
+    private final SegmentIdDao delegate;
+    private final long minLatencyMs;
+    private final long maxLatencyMs;
+    private final double failureRate;
+    private final double lostResponseRate;
+    private final double duplicateRate;
+
+    /**
+     * 每个 tag 上一次返回的 max_id，用于注入重复号段
+     */
+    private final Map<String, Long> lastMaxIds = new ConcurrentHashMap<>();
+
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder lostResponses = new LongAdder();
+    private final LongAdder duplicates = new LongAdder();
+
+    public FaultInjectingSegmentIdDao(SegmentIdDao delegate, long minLatencyMs, long maxLatencyMs,
+                                      double failureRate, double lostResponseRate, double duplicateRate) {
+        this.delegate = delegate;
+        this.minLatencyMs = minLatencyMs;
+        this.maxLatencyMs = maxLatencyMs;
+        this.failureRate = failureRate;
+        this.lostResponseRate = lostResponseRate;
+        this.duplicateRate = duplicateRate;
+    }
+
+    @Override
+    public long nextMaxId(String bizTag, int step) {
+        calls.increment();
+        simulateLatency();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (random.nextDouble() < failureRate) {
+            failures.increment();
+            throw new IllegalStateException("注入故障：申请号段失败，bizTag=" + bizTag);
+        }
+        Long last = lastMaxIds.get(bizTag);
+        if (last != null && random.nextDouble() < duplicateRate) {
+            duplicates.increment();
+            return last;
+        }
+        long maxId = delegate.nextMaxId(bizTag, step);
+        if (random.nextDouble() < lostResponseRate) {
+            lostResponses.increment();
+            throw new IllegalStateException("注入故障：号段已申请但响应丢失，bizTag=" + bizTag);
+        }
+        lastMaxIds.put(bizTag, maxId);
+        return maxId;
+    }
+
+    @Override
+    public List<String> getAllTags() {
+        return delegate.getAllTags();
+    }
+
+    @Override
+    public boolean existsTag(String bizTag) {
+        return delegate.existsTag(bizTag);
+    }
+
+    public long getCalls() {
+        return calls.sum();
+    }
+
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    public long getLostResponses() {
+        return lostResponses.sum();
+    }
+
+    public long getDuplicates() {
+        return duplicates.sum();
+    }
+
+    private void simulateLatency() {
+        if (maxLatencyMs <= 0) {
+            return;
+        }
+        long latency = minLatencyMs >= maxLatencyMs
+                ? minLatencyMs
+                : ThreadLocalRandom.current().nextLong(minLatencyMs, maxLatencyMs + 1);
+        try {
+            TimeUnit.MILLISECONDS.sleep(latency);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.wenziyue.uid.benchmark;
+
+import com.wenziyue.uid.segment.SegmentIdDao;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 基于内存的 SegmentIdDao，用来替代 leaf_alloc 表做基准测试
+ * 可以为每次 nextMaxId 注入 [minLatencyMs, maxLatencyMs] 之间的随机延迟，模拟慢库
+ *
+ * @author wenziyue
+ */
+public class InMemorySegmentIdDao implements SegmentIdDao {
+
+    private final Map<String, AtomicLong> maxIds = new ConcurrentHashMap<>();
+    private final long minLatencyMs;
+    private final long maxLatencyMs;
+    private final AtomicLong fetchCount = new AtomicLong();
+
+    public InMemorySegmentIdDao(long minLatencyMs, long maxLatencyMs, String... tags) {
+        this.minLatencyMs = minLatencyMs;
+        this.maxLatencyMs = maxLatencyMs;
+        for (String tag : tags) {
+            maxIds.put(tag, new AtomicLong(0));
+        }
+    }
+
+    /**
+     * 解析 "min-max" 形式的延迟配置（单位毫秒），例如 "0-0"、"5-50"
+     */
+    public static InMemorySegmentIdDao withLatency(String latencyMs, String... tags) {
+        String[] range = latencyMs.split("-");
+        return new InMemorySegmentIdDao(Long.parseLong(range[0]), Long.parseLong(range[1]), tags);
+    }
+
+    @Override
+    public long nextMaxId(String bizTag, int step) {
+        simulateLatency();
+        fetchCount.incrementAndGet();
+        return maxIds.computeIfAbsent(bizTag, k -> new AtomicLong(0)).addAndGet(step);
+    }
+
+    @Override
+    public List<String> getAllTags() {
+        return new ArrayList<>(maxIds.keySet());
+    }
+
+    /**
+     * 累计访问 nextMaxId 的次数
+     */
+    public long getFetchCount() {
+        return fetchCount.get();
+    }
+
+    private void simulateLatency() {
+        if (maxLatencyMs <= 0) {
+            return;
+        }
+        long latency = minLatencyMs >= maxLatencyMs
+                ? minLatencyMs
+                : ThreadLocalRandom.current().nextLong(minLatencyMs, maxLatencyMs + 1);
+        try {
+            TimeUnit.MILLISECONDS.sleep(latency);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.wenziyue.uid.benchmark;
+
+import com.wenziyue.uid.common.Result;
+import com.wenziyue.uid.common.Status;
+import com.wenziyue.uid.properties.UidGeneratorProperties;
+import com.wenziyue.uid.segment.FileSegmentIdDao;
+import com.wenziyue.uid.segment.SegmentIdDao;
+import com.wenziyue.uid.segment.SegmentIdGeneratorImpl;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SegmentIdGeneratorImpl.nextId 的基准测试
+ * - step / prepareNextPercent / DAO 延迟 / 线程小段大小 通过 @Param 组合；
+ * - store=file 时改用本地号段文件（每次申请号段都 fsync），此时 DAO 延迟参数不生效；
+ * - 线程数由 BenchmarkRunner 按 1 ~ 64 逐档设置（也可以用 -t 指定）；
+ * - Throughput 模式看吞吐，SampleTime 模式看 p99 / p999；
+ * - Outcome 统计成功数与 EXCEPTION_ID_TWO_SEGMENTS_ARE_NULL(-3) 的次数。
+ *
+ * @author wenziyue
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SegmentIdGenBenchmark {
+
+    static final String TAG = "benchmark";
+
+    /**
+     * 两段均未就绪时的异常码，与 SegmentIdGeneratorImpl 保持一致
+     */
+    static final long EXCEPTION_ID_TWO_SEGMENTS_ARE_NULL = -3;
+
+    @Param({"1000", "10000", "100000"})
+    public int step;
+
+    @Param({"20", "50", "80"})
+    public int prepareNextPercent;
+
+    /**
+     * 每次取号段的模拟数据库延迟，格式 min-max（毫秒）
+     */
+    @Param({"0-0", "5-50"})
+    public String daoLatencyMs;
+
+    /**
+     * 每个线程一次领取的 ID 个数，0 表示每次都在共享计数器上自增
+     */
+    @Param({"0", "256"})
+    public int threadChunkSize;
+
+    /**
+     * 号段存储：memory（内存版 DAO）或 file（FileSegmentIdDao），默认只跑 memory，用 -p store=file 对比
+     */
+    @Param({"memory"})
+    public String store;
+
+    SegmentIdGeneratorImpl generator;
+    private ThreadPoolTaskExecutor taskExecutor;
+    private ScheduledExecutorService scheduler;
+    private FileSegmentIdDao fileDao;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        UidGeneratorProperties properties = new UidGeneratorProperties();
+        properties.setBizTag(TAG);
+        properties.setStep(step);
+        properties.setPrepareNextPercent(prepareNextPercent);
+        properties.setThreadChunkSize(threadChunkSize);
+
+        taskExecutor = new ThreadPoolTaskExecutor();
+        taskExecutor.setCorePoolSize(5);
+        taskExecutor.setMaxPoolSize(10);
+        taskExecutor.setQueueCapacity(100);
+        taskExecutor.setThreadNamePrefix("segment-pool-");
+        taskExecutor.initialize();
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "segment-uid-cache-refresh");
+            t.setDaemon(true);
+            return t;
+        });
+
+        SegmentIdDao dao;
+        if ("file".equals(store)) {
+            Path storeDir = Files.createTempDirectory("uid-benchmark");
+            fileDao = new FileSegmentIdDao(storeDir.resolve("uid-segment.store"), 10000);
+            fileDao.createTag(TAG, 0, step);
+            dao = fileDao;
+        } else {
+            dao = InMemorySegmentIdDao.withLatency(daoLatencyMs, TAG);
+        }
+        generator = new SegmentIdGeneratorImpl(properties, dao, taskExecutor, scheduler);
+        generator.init();
+        // 首段同步加载不计入测量
+        generator.nextId(TAG);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        taskExecutor.shutdown();
+        scheduler.shutdownNow();
+        if (fileDao != null) {
+            fileDao.close();
+        }
+    }
+
+    /**
+     * 每个线程各自累加，JMH 会把字段值作为附加指标输出
+     */
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Outcome {
+        public long success;
+        public long twoSegmentsNull;
+        public long otherError;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            success = 0;
+            twoSegmentsNull = 0;
+            otherError = 0;
+        }
+    }
+
+    @Benchmark
+    public long nextId(Outcome outcome) {
+        Result result = generator.nextId(TAG);
+        if (result.getStatus() == Status.SUCCESS) {
+            outcome.success++;
+        } else if (result.getId() == EXCEPTION_ID_TWO_SEGMENTS_ARE_NULL) {
+            outcome.twoSegmentsNull++;
+        } else {
+            outcome.otherError++;
+        }
+        return result.getId();
+    }
+}
@@ -0,0 +1,233 @@
+package com.wenziyue.uid.benchmark;
+
+import com.wenziyue.uid.common.IdGenException;
+import com.wenziyue.uid.properties.UidGeneratorProperties;
+import com.wenziyue.uid.segment.SegmentIdGeneratorImpl;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 号段切换的并发正确性压测：多线程、多 tag 持续发号，DAO 注入延迟、失败、响应丢失与重复号段，
+ * 每个 ID 都写入按 tag 区分的位图检查全局唯一，最后输出吞吐、各异常码比例与 DAO 故障统计。
+ * <p>
+ * 用法：java -cp target/benchmarks.jar com.wenziyue.uid.benchmark.SegmentStressHarness [key=value ...]，例如
+ * java -cp target/benchmarks.jar com.wenziyue.uid.benchmark.SegmentStressHarness threads=32 tags=8 seconds=30 failureRate=0.05
+ * <p>
+ * 未注入重复号段（duplicateRate=0）时发现任何重复 ID 或非法 ID 即以退出码 1 结束，可以直接用于验证发号路径的改写；
+ * 注入了重复号段时重复是预期的，用来确认位图检查本身有效。
+ * 发号接口抛出 IdGenException 以外的异常、或有工作线程提前退出时同样以退出码 1 结束
+ *
+ * @author wenziyue
+ */
+public class SegmentStressHarness {
+
+    private static final String TAG_PREFIX = "stress-";
+
+    /**
+     * 最多打印的重复 ID 个数
+     */
+    private static final int MAX_REPORTED_DUPLICATES = 10;
+
+    public static void main(String[] args) throws InterruptedException {
+        Map<String, String> options = parseOptions(args);
+        int threads = intOption(options, "threads", 16);
+        int tags = intOption(options, "tags", 4);
+        int seconds = intOption(options, "seconds", 10);
+        String latencyMs = options.getOrDefault("latencyMs", "0-5");
+        double failureRate = doubleOption(options, "failureRate", 0.02);
+        double lostResponseRate = doubleOption(options, "lostResponseRate", 0.02);
+        double duplicateRate = doubleOption(options, "duplicateRate", 0);
+        double batchRate = doubleOption(options, "batchRate", 0.01);
+        int batchSize = intOption(options, "batchSize", 100);
+
+        UidGeneratorProperties properties = new UidGeneratorProperties();
+        properties.setBizTag(TAG_PREFIX + 0);
+        properties.setStep(intOption(options, "step", 1000));
+        properties.setPrepareNextPercent(intOption(options, "prepareNextPercent", 80));
+        properties.setSegmentCount(intOption(options, "segmentCount", 2));
+        properties.setReserveSegments(intOption(options, "reserveSegments", 0));
+        properties.setThreadChunkSize(intOption(options, "threadChunkSize", 0));
+        properties.setSegmentWaitTimeout(Duration.ofMillis(intOption(options, "segmentWaitTimeoutMs", 50)));
+        properties.getCircuitBreaker().setEnabled(Boolean.parseBoolean(options.getOrDefault("circuitBreaker", "false")));
+
+        String[] tagNames = new String[tags];
+        for (int i = 0; i < tags; i++) {
+            tagNames[i] = TAG_PREFIX + i;
+        }
+        String[] latency = latencyMs.split("-");
+        FaultInjectingSegmentIdDao faultDao = new FaultInjectingSegmentIdDao(
+                new InMemorySegmentIdDao(0, 0, tagNames),
+                Long.parseLong(latency[0]), Long.parseLong(latency[1]),
+                failureRate, lostResponseRate, duplicateRate);
+
+        ThreadPoolTaskExecutor taskExecutor = new ThreadPoolTaskExecutor();
+        taskExecutor.setCorePoolSize(5);
+        taskExecutor.setMaxPoolSize(10);
+        taskExecutor.setQueueCapacity(100);
+        taskExecutor.setThreadNamePrefix("segment-pool-");
+        taskExecutor.initialize();
+        ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(2, r -> {
+            Thread t = new Thread(r, "segment-uid-scheduler");
+            t.setDaemon(true);
+            return t;
+        });
+        SegmentIdGeneratorImpl generator = new SegmentIdGeneratorImpl(properties, faultDao, taskExecutor, scheduler);
+        generator.init();
+
+        Map<String, ConcurrentBitmap> bitmaps = new HashMap<>();
+        for (String tag : tagNames) {
+            bitmaps.put(tag, new ConcurrentBitmap());
+        }
+        LongAdder issued = new LongAdder();
+        LongAdder calls = new LongAdder();
+        LongAdder duplicateIds = new LongAdder();
+        LongAdder invalidIds = new LongAdder();
+        Map<Long, LongAdder> errors = new ConcurrentHashMap<>();
+        Set<String> reportedDuplicates = ConcurrentHashMap.newKeySet();
+        // IdGenException 以外的异常按类型计数：发号接口只应抛出 IdGenException
+        Map<String, LongAdder> unexpected = new ConcurrentHashMap<>();
+        // 提前退出的工作线程，存在时吞吐与错误率只统计了存活线程，结果无效
+        Map<String, Throwable> deadWorkers = new ConcurrentHashMap<>();
+
+        System.out.printf("threads=%d tags=%d seconds=%d step=%d latencyMs=%s failureRate=%s lostResponseRate=%s duplicateRate=%s "
+                        + "batchRate=%s batchSize=%d segmentCount=%d reserveSegments=%d threadChunkSize=%d circuitBreaker=%s%n",
+                threads, tags, seconds, properties.getStep(), latencyMs, failureRate, lostResponseRate, duplicateRate,
+                batchRate, batchSize, properties.getSegmentCount(), properties.getReserveSegments(),
+                properties.getThreadChunkSize(), properties.getCircuitBreaker().isEnabled());
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int i = 0; i < threads; i++) {
+            Thread worker = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                try {
+                    while (System.nanoTime() < deadline) {
+                        String tag = tagNames[random.nextInt(tags)];
+                        ConcurrentBitmap bitmap = bitmaps.get(tag);
+                        calls.increment();
+                        try {
+                            if (random.nextDouble() < batchRate) {
+                                for (long id : generator.nextIds(tag, batchSize)) {
+                                    check(tag, id, bitmap, duplicateIds, invalidIds, reportedDuplicates);
+                                }
+                                issued.add(batchSize);
+                            } else {
+                                check(tag, generator.nextLongId(tag), bitmap, duplicateIds, invalidIds, reportedDuplicates);
+                                issued.increment();
+                            }
+                        } catch (IdGenException e) {
+                            errors.computeIfAbsent(e.getCode(), k -> new LongAdder()).increment();
+                        } catch (RuntimeException e) {
+                            unexpected.computeIfAbsent(e.getClass().getName(), k -> new LongAdder()).increment();
+                        }
+                    }
+                } catch (Throwable t) {
+                    deadWorkers.put(Thread.currentThread().getName(), t);
+                    throw t;
+                } finally {
+                    done.countDown();
+                }
+            }, "stress-" + i);
+            worker.start();
+        }
+
+        long start = System.nanoTime();
+        long lastIssued = 0;
+        while (!done.await(1, TimeUnit.SECONDS)) {
+            long current = issued.sum();
+            System.out.printf("[%3ds] ids/s=%-12d duplicates=%-8d errors=%-8d unexpected=%-8d dead workers=%d%n",
+                    TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start), current - lastIssued,
+                    duplicateIds.sum(), errors.values().stream().mapToLong(LongAdder::sum).sum(),
+                    unexpected.values().stream().mapToLong(LongAdder::sum).sum(), deadWorkers.size());
+            lastIssued = current;
+        }
+        double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+
+        taskExecutor.shutdown();
+        scheduler.shutdownNow();
+
+        long totalCalls = calls.sum();
+        System.out.println();
+        System.out.printf("elapsed          %.1f s%n", elapsedSeconds);
+        System.out.printf("ids issued       %d (%.0f ids/s)%n", issued.sum(), issued.sum() / elapsedSeconds);
+        System.out.printf("calls            %d (%.0f calls/s)%n", totalCalls, totalCalls / elapsedSeconds);
+        new TreeMap<>(errors).forEach((code, count) -> System.out.printf("error %-10d %d (%.4f%%)%n",
+                code, count.sum(), count.sum() * 100.0 / Math.max(totalCalls, 1)));
+        new TreeMap<>(unexpected).forEach((type, count) -> System.out.printf("unexpected %s %d (%.4f%%)%n",
+                type, count.sum(), count.sum() * 100.0 / Math.max(totalCalls, 1)));
+        System.out.printf("dao calls        %d, failures %d, lost responses %d, duplicate ranges %d%n",
+                faultDao.getCalls(), faultDao.getFailures(), faultDao.getLostResponses(), faultDao.getDuplicates());
+        int pages = bitmaps.values().stream().mapToInt(ConcurrentBitmap::getPageCount).sum();
+        System.out.printf("bitmap pages     %d (~%d MB)%n", pages, pages / 8);
+        System.out.printf("duplicate ids    %d%n", duplicateIds.sum());
+        System.out.printf("invalid ids      %d%n", invalidIds.sum());
+        reportedDuplicates.forEach(duplicate -> System.out.println("  duplicate " + duplicate));
+        System.out.printf("dead workers     %d / %d%n", deadWorkers.size(), threads);
+        deadWorkers.forEach((name, t) -> System.out.println("  " + name + " died: " + t));
+
+        if (!deadWorkers.isEmpty() || !unexpected.isEmpty()) {
+            System.out.println("FAILED: 发号接口抛出了 IdGenException 以外的异常或有工作线程提前退出，本次结果无效");
+            System.exit(1);
+        }
+        if (invalidIds.sum() > 0 || (duplicateIds.sum() > 0 && faultDao.getDuplicates() == 0)) {
+            System.out.println("FAILED: 发号路径产生了重复或非法 ID");
+            System.exit(1);
+        }
+        if (faultDao.getDuplicates() > 0 && duplicateIds.sum() == 0) {
+            System.out.println("WARN: 注入了重复号段但没有检测到重复 ID（注入的号段可能在结束前未被使用）");
+        }
+        if (duplicateIds.sum() > 0) {
+            System.out.println("重复 ID 均来自注入的重复号段，位图检查有效");
+        }
+        System.out.println("PASSED");
+        System.exit(0);
+    }
+
+    private static void check(String tag, long id, ConcurrentBitmap bitmap,
+                              LongAdder duplicateIds, LongAdder invalidIds, Set<String> reportedDuplicates) {
+        if (id <= 0) {
+            invalidIds.increment();
+            return;
+        }
+        if (!bitmap.mark(id)) {
+            duplicateIds.increment();
+            if (reportedDuplicates.size() < MAX_REPORTED_DUPLICATES) {
+                reportedDuplicates.add(tag + ":" + id);
+            }
+        }
+    }
+
+    private static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int index = arg.indexOf('=');
+            if (index <= 0) {
+                throw new IllegalArgumentException("参数格式应为 key=value：" + arg);
+            }
+            options.put(arg.substring(0, index), arg.substring(index + 1));
+        }
+        return options;
+    }
+
+    private static int intOption(Map<String, String> options, String key, int defaultValue) {
+        String value = options.get(key);
+        return value == null ? defaultValue : Integer.parseInt(value);
+    }
+
+    private static double doubleOption(Map<String, String> options, String key, double defaultValue) {
+        String value = options.get(key);
+        return value == null ? defaultValue : Double.parseDouble(value);
+    }
+}